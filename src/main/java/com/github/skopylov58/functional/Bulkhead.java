@@ -0,0 +1,228 @@
+package com.github.skopylov58.functional;
+
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.github.skopylov58.functional.Try.CheckedFunction;
+import com.github.skopylov58.functional.Try.CheckedSupplier;
+
+/**
+ * Bulkhead limits number of concurrent calls into some dependency.
+ *
+ * <p>
+ * Bulkhead never blocks the caller, call that exceeds current limit is rejected and comes back
+ * as {@link Try} failure with {@link RejectedExecutionException}. Permits are managed with
+ * CAS loops (no locks, no monitors), so bulkhead is safe to use from both platform and virtual threads.
+ *
+ * <pre>
+ *   Bulkhead bulkhead = Bulkhead.fixed(10);
+ *   Function&lt;URL, Try&lt;String&gt;&gt; read = bulkhead.decorate(this::readUrl);
+ * </pre>
+ *
+ * @author skopylov@gmail.com
+ */
+public interface Bulkhead {
+
+  /**
+   * Tries to acquire permit, never blocks.
+   * @return true if permit was acquired
+   */
+  boolean tryAcquire();
+
+  /**
+   * Releases permit acquired by {@link #tryAcquire()}.
+   * @param latencyNanos duration of the call in nanoseconds
+   * @param success true if call has completed successfully
+   */
+  void release(long latencyNanos, boolean success);
+
+  /**
+   * Current concurrency limit.
+   * @return limit
+   */
+  int limit();
+
+  /**
+   * Number of calls being executed now.
+   * @return number of acquired permits
+   */
+  int inFlight();
+
+  /**
+   * Decorates function with this bulkhead.
+   * @param <T> function input parameter type
+   * @param <R> function result type
+   * @param func function to decorate
+   * @return total function {@code T=>Try<R>}, rejected calls are failures with {@link RejectedExecutionException}
+   */
+  default <T, R> Function<T, Try<R>> decorate(CheckedFunction<T, R> func) {
+    return t -> {
+      if (!tryAcquire()) {
+        return Try.failure(new RejectedExecutionException("Bulkhead is full, limit " + limit()));
+      }
+      long start = System.nanoTime();
+      boolean success = false;
+      try {
+        Try<R> res = Try.catching(func).apply(t);
+        success = res.isSuccess();
+        return res;
+      } finally {
+        release(System.nanoTime() - start, success);
+      }
+    };
+  }
+
+  /**
+   * Decorates supplier with this bulkhead.
+   * @param <T> supplier result type
+   * @param supplier supplier to decorate
+   * @return total supplier {@code ()=>Try<T>}, rejected calls are failures with {@link RejectedExecutionException}
+   */
+  default <T> Supplier<Try<T>> decorate(CheckedSupplier<T> supplier) {
+    Function<Object, Try<T>> func = decorate(o -> supplier.get());
+    return () -> func.apply(null);
+  }
+
+  /**
+   * Creates bulkhead with fixed limit.
+   * @param limit max number of concurrent calls
+   * @return bulkhead
+   */
+  static Bulkhead fixed(int limit) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException();
+    }
+    return new Fixed(limit);
+  }
+
+  /**
+   * Creates bulkhead with adaptive AIMD (additive increase, multiplicative decrease) limit.
+   * Limit grows by one per window of successful calls and is decreased by backoff ratio
+   * when call fails or its latency exceeds given threshold.
+   *
+   * @param minLimit lower bound of the limit
+   * @param maxLimit upper bound of the limit
+   * @param latencyThreshold calls slower than this are treated as overload signal
+   * @param backoffRatio multiplicative decrease factor, between 0 and 1
+   * @return adaptive bulkhead starting with min limit
+   */
+  static Bulkhead aimd(int minLimit, int maxLimit, Duration latencyThreshold, double backoffRatio) {
+    if (minLimit <= 0 || minLimit > maxLimit || backoffRatio <= 0 || backoffRatio >= 1) {
+      throw new IllegalArgumentException();
+    }
+    return new Aimd(minLimit, maxLimit, latencyThreshold.toNanos(), backoffRatio);
+  }
+
+  /**
+   * Creates bulkhead with adaptive AIMD limit and backoff ratio 0.9
+   * @param minLimit lower bound of the limit
+   * @param maxLimit upper bound of the limit
+   * @param latencyThreshold calls slower than this are treated as overload signal
+   * @return adaptive bulkhead
+   */
+  static Bulkhead aimd(int minLimit, int maxLimit, Duration latencyThreshold) {
+    return aimd(minLimit, maxLimit, latencyThreshold, 0.9);
+  }
+
+  private static boolean tryIncrement(AtomicInteger counter, int limit) {
+    for (;;) {
+      int cur = counter.get();
+      if (cur >= limit) {
+        return false;
+      }
+      if (counter.compareAndSet(cur, cur + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Bulkhead with fixed limit.
+   */
+  class Fixed implements Bulkhead {
+
+    private final int limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    Fixed(int limit) {
+      this.limit = limit;
+    }
+
+    @Override
+    public boolean tryAcquire() {
+      return tryIncrement(inFlight, limit);
+    }
+
+    @Override
+    public void release(long latencyNanos, boolean success) {
+      inFlight.decrementAndGet();
+    }
+
+    @Override
+    public int limit() {
+      return limit;
+    }
+
+    @Override
+    public int inFlight() {
+      return inFlight.get();
+    }
+  }
+
+  /**
+   * Bulkhead with AIMD adaptive limit.
+   */
+  class Aimd implements Bulkhead {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long thresholdNanos;
+    private final double backoffRatio;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    /** Limit as double bits, fractional part accumulates additive increase */
+    private final AtomicLong limit;
+
+    Aimd(int minLimit, int maxLimit, long thresholdNanos, double backoffRatio) {
+      this.minLimit = minLimit;
+      this.maxLimit = maxLimit;
+      this.thresholdNanos = thresholdNanos;
+      this.backoffRatio = backoffRatio;
+      limit = new AtomicLong(Double.doubleToLongBits(minLimit));
+    }
+
+    @Override
+    public boolean tryAcquire() {
+      return tryIncrement(inFlight, limit());
+    }
+
+    @Override
+    public void release(long latencyNanos, boolean success) {
+      int used = inFlight.getAndDecrement();
+      boolean overload = !success || latencyNanos > thresholdNanos;
+      limit.getAndUpdate(bits -> {
+        double l = Double.longBitsToDouble(bits);
+        if (overload) {
+          l = Math.max(minLimit, l * backoffRatio);
+        } else if (used * 2 >= (int) l) {
+          // grow only when limit is really used, +1 per limit successful calls
+          l = Math.min(maxLimit, l + 1.0 / l);
+        }
+        return Double.doubleToLongBits(l);
+      });
+    }
+
+    @Override
+    public int limit() {
+      return (int) Double.longBitsToDouble(limit.get());
+    }
+
+    @Override
+    public int inFlight() {
+      return inFlight.get();
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package com.github.skopylov58.functional;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Cache of the single effect result with time to live, used by {@link IO#cached(Duration)}
+ * and {@link ZIO#cached(Duration)}.
+ *
+ * <p>
+ * The first caller after expiration runs the effect, concurrent callers join this run. Successful result
+ * is kept for TTL, failure (exception or result matching {@code isFailure}) is passed to joined callers
+ * and is not cached, so the next call runs the effect again. If the running caller is interrupted,
+ * joined callers do not fail but start the new run.
+ *
+ * @param <T> result type
+ */
+final class Cached<T> {
+
+  private record Entry<T>(CompletableFuture<T> future, long expiresAt) {}
+
+  private final long ttlNanos;
+  private final TimeSource timeSource;
+  private final Predicate<? super T> isFailure;
+  private final AtomicReference<Entry<T>> entry = new AtomicReference<>();
+
+  Cached(Duration ttl, TimeSource timeSource, Predicate<? super T> isFailure) {
+    if (ttl.isNegative() || ttl.isZero()) {
+      throw new IllegalArgumentException();
+    }
+    this.ttlNanos = ttl.toNanos();
+    this.timeSource = timeSource;
+    this.isFailure = isFailure;
+  }
+
+  T get(Supplier<T> effect) {
+    for (;;) {
+      Entry<T> cur = entry.get();
+      if (cur != null && !cur.future.isDone()) {
+        Supplier<T> joined = join(cur.future);
+        if (joined != null) {
+          return joined.get();
+        }
+        continue;
+      }
+      if (cur != null && timeSource.nanoTime() - cur.expiresAt < 0) {
+        return cur.future.join();
+      }
+      Entry<T> running = new Entry<>(new CompletableFuture<>(), Long.MAX_VALUE);
+      if (entry.compareAndSet(cur, running)) {
+        return run(running, effect);
+      }
+    }
+  }
+
+  private T run(Entry<T> running, Supplier<T> effect) {
+    T t;
+    try {
+      t = effect.get();
+    } catch (Throwable e) {
+      entry.compareAndSet(running, null);
+      running.future.completeExceptionally(e);
+      throw e;
+    }
+    if (isFailure.test(t)) {
+      entry.compareAndSet(running, null);
+    } else {
+      entry.compareAndSet(running, new Entry<>(running.future, timeSource.nanoTime() + ttlNanos));
+    }
+    running.future.complete(t);
+    return t;
+  }
+
+  /**
+   * Waits for the run of another caller.
+   * @return result supplier or null if that run was interrupted
+   */
+  private Supplier<T> join(CompletableFuture<T> future) {
+    try {
+      T t = future.get();
+      return () -> t;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Fiber.cancellation(e);
+    } catch (CancellationException e) {
+      // get() rethrows cancellation of the running caller as is, not wrapped
+      if (Thread.currentThread().isInterrupted()) {
+        throw e;
+      }
+      return null;
+    } catch (ExecutionException e) {
+      return () -> {
+        FPUtils.sneakyThrow(e.getCause());
+        return null;
+      };
+    }
+  }
+}
@@ -0,0 +1,140 @@
+package com.github.skopylov58.functional;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Coalesces individual {@link IO} lookups by key into bulk loads.
+ *
+ * <p>
+ * {@link #load(Object)} registers the key as pending when IO is created, the first run of any
+ * pending IO loads all pending keys with the single call of the bulk loader. So all lookups
+ * created before running them, for example by {@link IO#traverse(java.util.List, Function)},
+ * make one bulk call instead of N calls. Keys are deduplicated, loaded values are cached
+ * for the loader lifetime, so create new loader per request/run or call {@link #clear()}.
+ * Failed loads are not cached.
+ *
+ * <pre>
+ *   DataLoader&lt;Long, User&gt; users = DataLoader.of(userDao::findByIds);
+ *   IO&lt;List&lt;Optional&lt;User&gt;&gt;&gt; io = IO.traverse(userIds, users::load);
+ * </pre>
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+final class DataLoader<K, V> {
+
+  private final Function<Set<K>, Map<K, V>> bulkLoader;
+  private final int maxBatchSize;
+  private final Map<K, CompletableFuture<Optional<V>>> cache = new ConcurrentHashMap<>();
+  private final Queue<K> pending = new ConcurrentLinkedQueue<>();
+  private final AtomicLong batches = new AtomicLong();
+
+  private DataLoader(Function<Set<K>, Map<K, V>> bulkLoader, int maxBatchSize) {
+    if (maxBatchSize <= 0) {
+      throw new IllegalArgumentException();
+    }
+    this.bulkLoader = bulkLoader;
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  static <K, V> DataLoader<K, V> of(Function<Set<K>, Map<K, V>> bulkLoader) {
+    return of(bulkLoader, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Creates data loader.
+   * @param <K> key type
+   * @param <V> value type
+   * @param bulkLoader loads values for the set of keys, missing keys are treated as absent values
+   * @param maxBatchSize max number of keys in the single bulk call
+   * @return data loader
+   */
+  static <K, V> DataLoader<K, V> of(Function<Set<K>, Map<K, V>> bulkLoader, int maxBatchSize) {
+    return new DataLoader<>(bulkLoader, maxBatchSize);
+  }
+
+  /**
+   * Creates IO loading value by key, key is registered for the next bulk load immediately.
+   * @param key key
+   * @return IO giving loaded value or empty optional if bulk loader has not returned value for the key
+   */
+  IO<Optional<V>> load(K key) {
+    CompletableFuture<Optional<V>> registered = lookup(key);
+    return IO.of(() -> {
+      CompletableFuture<Optional<V>> future = registered;
+      // failed or cleared entry is not in the cache any more, so the re-run loads the key again
+      if (future.isDone() && cache.get(key) != future) {
+        future = lookup(key);
+      }
+      if (!future.isDone()) {
+        dispatch();
+      }
+      return join(future);
+    });
+  }
+
+  private CompletableFuture<Optional<V>> lookup(K key) {
+    return cache.computeIfAbsent(key, k -> {
+      pending.add(k);
+      return new CompletableFuture<>();
+    });
+  }
+
+  /**
+   * Loads all pending keys, in batches of max batch size.
+   */
+  void dispatch() {
+    for (;;) {
+      Set<K> keys = new LinkedHashSet<>();
+      K k;
+      while (keys.size() < maxBatchSize && (k = pending.poll()) != null) {
+        keys.add(k);
+      }
+      if (keys.isEmpty()) {
+        return;
+      }
+      batches.incrementAndGet();
+      try {
+        Map<K, V> values = bulkLoader.apply(keys);
+        keys.forEach(key -> cache.get(key).complete(Optional.ofNullable(values.get(key))));
+      } catch (RuntimeException | Error e) {
+        keys.forEach(key -> cache.remove(key).completeExceptionally(e));
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * Number of bulk loader calls.
+   * @return number of batches
+   */
+  long batches() {
+    return batches.get();
+  }
+
+  /**
+   * Clears cache of loaded values.
+   */
+  void clear() {
+    cache.values().removeIf(CompletableFuture::isDone);
+  }
+
+  private static <T> T join(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      FPUtils.sneakyThrow(e.getCause());
+      return null;
+    }
+  }
+}
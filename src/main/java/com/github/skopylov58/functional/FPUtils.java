@@ -1,15 +1,31 @@
 package com.github.skopylov58.functional;
 
-import java.lang.System.Logger.Level;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
@@ -21,6 +37,7 @@ import java.util.function.Supplier;
 import java.util.function.UnaryOperator;
 import java.util.stream.LongStream;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import com.github.skopylov58.functional.Try.CheckedConsumer;
 
 /**
@@ -479,25 +496,111 @@ public interface FPUtils {
 
   static <V> Optional<V> retry(Callable<V> callable, long numOfRetries, Backoff backoff,
       Predicate<V> isSuccess) {
-    for (long i = 0; i < numOfRetries && !Thread.currentThread().isInterrupted(); i++) {
+    return retry(callable, numOfRetries, backoff, isSuccess, RetryListener.noop());
+  }
+
+  /**
+   * Retry with backoff strategy and retry listener.
+   * @param <V> resulting type
+   * @param callable callable to retry
+   * @param numOfRetries number of retries
+   * @param backoff backoff strategy
+   * @param isSuccess tests if result is successful
+   * @param listener retry events listener
+   * @return Optional result
+   */
+  static <V> Optional<V> retry(Callable<V> callable, long numOfRetries, Backoff backoff,
+      Predicate<V> isSuccess, RetryListener listener) {
+    return retry(callable, numOfRetries, backoff, isSuccess, listener, TimeSource.system(), false).optional();
+  }
+
+  /**
+   * Retry with backoff strategy and retry listener that uses given time source for delays.
+   * Use {@link TimeSource#virtual()} to test retry scenarios without real sleeping.
+   * @param <V> resulting type
+   * @param callable callable to retry
+   * @param numOfRetries number of retries
+   * @param backoff backoff strategy
+   * @param isSuccess tests if result is successful
+   * @param listener retry events listener
+   * @param timeSource time source
+   * @return Optional result
+   */
+  static <V> Optional<V> retry(Callable<V> callable, long numOfRetries, Backoff backoff,
+      Predicate<V> isSuccess, RetryListener listener, TimeSource timeSource) {
+    return retry(callable, numOfRetries, backoff, isSuccess, listener, timeSource, false).optional();
+  }
+
+  /**
+   * Retry with backoff strategy that keeps history of attempts.
+   * @param <V> resulting type
+   * @param callable callable to retry
+   * @param numOfRetries number of retries
+   * @param backoff backoff strategy
+   * @param isSuccess tests if result is successful
+   * @param listener retry events listener
+   * @return retry result with history of attempts
+   */
+  static <V> RetryResult<V> retryWithHistory(Callable<V> callable, long numOfRetries, Backoff backoff,
+      Predicate<V> isSuccess, RetryListener listener) {
+    return retryWithHistory(callable, numOfRetries, backoff, isSuccess, listener, TimeSource.system());
+  }
+
+  /**
+   * Retry with backoff strategy that keeps history of attempts and uses given time source
+   * for delays and measurements. Use {@link TimeSource#virtual()} to test retry scenarios without real sleeping.
+   * @param <V> resulting type
+   * @param callable callable to retry
+   * @param numOfRetries number of retries
+   * @param backoff backoff strategy
+   * @param isSuccess tests if result is successful
+   * @param listener retry events listener
+   * @param timeSource time source
+   * @return retry result with history of attempts
+   */
+  static <V> RetryResult<V> retryWithHistory(Callable<V> callable, long numOfRetries, Backoff backoff,
+      Predicate<V> isSuccess, RetryListener listener, TimeSource timeSource) {
+    return retry(callable, numOfRetries, backoff, isSuccess, listener, timeSource, true);
+  }
+
+  private static <V> RetryResult<V> retry(Callable<V> callable, long numOfRetries, Backoff backoff,
+      Predicate<V> isSuccess, RetryListener listener, TimeSource timeSource, boolean keepHistory) {
+    List<RetryResult.Attempt> history = keepHistory ? new ArrayList<>() : List.of();
+    Exception lastFailure = null;
+    long i = 0;
+    for (; i < numOfRetries && !Thread.currentThread().isInterrupted(); i++) {
+      Duration delay = Duration.ZERO;
       if (i != 0) {
+        delay = backoff.apply(i);
         try {
-          Thread.sleep(backoff.apply(i).toMillis());
+          timeSource.sleep(delay);
         } catch (InterruptedException ie) {
           Thread.currentThread().interrupt();
           break;
         }
       }
+      listener.onAttemptStart(i);
+      long start = timeSource.nanoTime();
       try {
         V value = callable.call();
         if (isSuccess.test(value)) {
-          return Optional.ofNullable(value);
+          if (keepHistory) {
+            history.add(new RetryResult.Attempt(i, delay, Duration.ofNanos(timeSource.nanoTime() - start), null));
+          }
+          listener.onSuccess(i + 1);
+          return new RetryResult<>(value, true, history);
         }
+        lastFailure = new NoSuchElementException();
       } catch (Exception e) {
-        System.getLogger(FPUtils.class.getName()).log(Level.INFO, e);
+        lastFailure = e;
       }
+      if (keepHistory) {
+        history.add(new RetryResult.Attempt(i, delay, Duration.ofNanos(timeSource.nanoTime() - start), lastFailure));
+      }
+      listener.onAttemptFailure(i, lastFailure);
     }
-    return Optional.empty();
+    listener.onGiveUp(i, lastFailure);
+    return new RetryResult<>(null, false, history);
   }
 
   static <V> Optional<V> retry2(Callable<V> callable, 
@@ -505,21 +608,64 @@ public interface FPUtils {
       Backoff backoff,
       Predicate<V> isSuccess) 
   {
-    return  LongStream.iterate(0, i -> i + 1)
+    return retry2(callable, lp, backoff, isSuccess, RetryListener.noop());
+  }
+
+  static <V> Optional<V> retry2(Callable<V> callable, 
+      LongPredicate lp,
+      Backoff backoff,
+      Predicate<V> isSuccess,
+      RetryListener listener) 
+  {
+    return retry2(callable, lp, backoff, isSuccess, listener, TimeSource.system());
+  }
+
+  static <V> Optional<V> retry2(Callable<V> callable, 
+      LongPredicate lp,
+      Backoff backoff,
+      Predicate<V> isSuccess,
+      RetryListener listener,
+      TimeSource timeSource) 
+  {
+    AtomicLong attempts = new AtomicLong();
+    AtomicReference<Exception> lastFailure = new AtomicReference<>();
+    Optional<V> res = LongStream.iterate(0, i -> i + 1)
     .takeWhile(lp::test)
-    .takeWhile(i -> i == 0 || sleep(backoff.apply(i)))
-    .mapToObj(i -> call(callable))
-    .map(opt -> opt.filter(isSuccess))
+    .takeWhile(i -> i == 0 || sleep(backoff.apply(i), timeSource))
+    .peek(i -> {
+      attempts.incrementAndGet();
+      listener.onAttemptStart(i);
+    })
+    .mapToObj(i -> call(callable, e -> {
+      lastFailure.set(e);
+      listener.onAttemptFailure(i, e);
+    }, isSuccess))
     .flatMap(Optional::stream)
     .findFirst();
+    if (res.isPresent()) {
+      listener.onSuccess(attempts.get());
+    } else {
+      listener.onGiveUp(attempts.get(), lastFailure.get());
+    }
+    return res;
   }
 
   static boolean sleep(Duration delay) {
+    return sleep(delay, TimeSource.system());
+  }
+
+  /**
+   * Sleeps using given time source.
+   * @param delay duration to sleep
+   * @param timeSource time source
+   * @return false if current thread was interrupted
+   */
+  static boolean sleep(Duration delay, TimeSource timeSource) {
     if (Thread.currentThread().isInterrupted()) {
       return false;
     }
     try {
-      Thread.sleep(delay.toMillis());
+      timeSource.sleep(delay);
       return true;
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
@@ -528,11 +674,211 @@ public interface FPUtils {
   }
   
   static <T> Optional<T> call(Callable<T> callable) {
+    return call(callable, e -> {}, x -> true);
+  }
+
+  /**
+   * Calls callable, gives access to the failure.
+   * @param <T> result type
+   * @param callable callable to call
+   * @param onFailure failure consumer, gets {@link NoSuchElementException} if result is null or not accepted by predicate
+   * @param isSuccess tests if result is successful
+   * @return Optional result
+   */
+  static <T> Optional<T> call(Callable<T> callable, Consumer<Exception> onFailure, Predicate<T> isSuccess) {
     try {
-      return Optional.ofNullable(callable.call());
+      T t = callable.call();
+      if (t != null && isSuccess.test(t)) {
+        return Optional.of(t);
+      }
+      onFailure.accept(new NoSuchElementException());
     } catch (Exception e) {
-      return Optional.empty();
+      onFailure.accept(e);
     }
+    return Optional.empty();
   }
 
+  /**
+   * Maps stream elements with retry, keeping input order.
+   * @param <T> element type
+   * @param <R> result type
+   * @param stream input stream
+   * @param func function to apply to each element
+   * @param backoff backoff strategy between attempts of the same element
+   * @param maxAttempts max number of attempts per element
+   * @param parallelism max number of elements processed concurrently
+   * @return lazy stream of results
+   * @see #mapWithRetry(Stream, CheckedFunction, Backoff, long, int, boolean, Executor)
+   */
+  static <T, R> Stream<Try<R>> mapWithRetry(Stream<T> stream, CheckedFunction<T, R> func, Backoff backoff,
+      long maxAttempts, int parallelism) {
+    return mapWithRetry(stream, func, backoff, maxAttempts, parallelism, true, Fiber.defaultExecutor());
+  }
+
+  /**
+   * Maps stream elements with retry.
+   * 
+   * <p>
+   * Each element is retried independently, not more than parallelism elements are in progress at a time.
+   * Delays between attempts do not block any thread, so slow or failing element does not stall the rest.
+   * Input stream is consumed lazily, as results are taken from the resulting stream.
+   * In ordered mode results are emitted in input order, otherwise as they complete.
+   * 
+   * @param <T> element type
+   * @param <R> result type
+   * @param stream input stream
+   * @param func function to apply to each element
+   * @param backoff backoff strategy between attempts of the same element
+   * @param maxAttempts max number of attempts per element
+   * @param parallelism max number of elements processed concurrently
+   * @param ordered true to keep input order
+   * @param executor executor to run attempts
+   * @return lazy stream of results, failure holds exception of the last attempt
+   */
+  static <T, R> Stream<Try<R>> mapWithRetry(Stream<T> stream, CheckedFunction<T, R> func, Backoff backoff,
+      long maxAttempts, int parallelism, boolean ordered, Executor executor) {
+    if (maxAttempts <= 0 || parallelism <= 0) {
+      throw new IllegalArgumentException();
+    }
+    Iterator<T> source = stream.iterator();
+    Iterator<Try<R>> iter = new Iterator<Try<R>>() {
+      final Deque<CompletableFuture<Try<R>>> window = new ArrayDeque<>();
+      final BlockingQueue<Try<R>> completed = new LinkedBlockingQueue<>();
+      int inFlight = 0;
+
+      void fill() {
+        while (inFlight < parallelism && source.hasNext()) {
+          var future = retryAsync(source.next(), func, backoff, maxAttempts, executor, 0);
+          inFlight++;
+          if (ordered) {
+            window.add(future);
+          } else {
+            // same failure as ordered mode gets from the future, e.g. when the executor rejects the task
+            future.whenComplete((res, e) -> completed.add(e == null ? res
+                : Try.failure(new ExecutionException(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e))));
+          }
+        }
+      }
+
+      @Override
+      public boolean hasNext() {
+        fill();
+        return inFlight > 0;
+      }
+
+      @Override
+      public Try<R> next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        inFlight--;
+        try {
+          return ordered ? window.poll().get() : completed.take();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new CancellationException();
+        } catch (ExecutionException e) {
+          return Try.failure(e);
+        }
+      }
+    };
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iter, Spliterator.ORDERED), false)
+        .onClose(stream::close);
+  }
+
+  private static <T, R> CompletableFuture<Try<R>> retryAsync(T t, CheckedFunction<T, R> func, Backoff backoff,
+      long maxAttempts, Executor executor, long attempt) {
+    Executor ex = attempt == 0 ? executor
+        : WheelTimer.shared().delayedExecutor(backoff.apply(attempt), executor);
+    return CompletableFuture.supplyAsync(() -> Try.of(() -> func.apply(t)), ex)
+        .thenCompose(res -> res.isSuccess() || attempt + 1 >= maxAttempts
+            ? CompletableFuture.completedFuture(res)
+            : retryAsync(t, func, backoff, maxAttempts, executor, attempt + 1));
+  }
+
+  /**
+   * Applies task to the items concurrently, not more than parallelism tasks are run at a time.
+   * On the first failure (exception or result matching isFailure) remaining items are not started
+   * and running tasks are cancelled with interruption.
+   * 
+   * @param <T> item type
+   * @param <R> result type
+   * @param items items
+   * @param task task to apply to each item
+   * @param parallelism max number of concurrent tasks
+   * @param ordered true to return results in items order, otherwise in completion order
+   * @param executor executor to run tasks
+   * @param isFailure tells failed results
+   * @return results, or single element list with the first failed result
+   * @throws CancellationException if current thread was interrupted
+   */
+  static <T, R> List<R> parRun(List<T> items, Function<? super T, ? extends R> task, int parallelism,
+      boolean ordered, Executor executor, Predicate<? super R> isFailure) {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException();
+    }
+    int size = items.size();
+    if (size == 0) {
+      return List.of();
+    }
+    Object[] results = new Object[size];
+    AtomicInteger next = new AtomicInteger();
+    AtomicInteger completed = new AtomicInteger();
+    AtomicReference<Object> failure = new AtomicReference<>();
+    AtomicReference<Throwable> error = new AtomicReference<>();
+    int numOfWorkers = Math.min(parallelism, size);
+    AtomicInteger running = new AtomicInteger(numOfWorkers);
+    CompletableFuture<Void> done = new CompletableFuture<>();
+
+    Runnable worker = () -> {
+      try {
+        for (int i = next.getAndIncrement(); i < size && !done.isDone(); i = next.getAndIncrement()) {
+          R r = task.apply(items.get(i));
+          if (isFailure.test(r)) {
+            failure.compareAndSet(null, r);
+            done.complete(null);
+          } else {
+            results[ordered ? i : completed.getAndIncrement()] = r;
+          }
+        }
+      } catch (Throwable e) {
+        // IO may throw checked exceptions sneakily
+        if (!done.isDone()) {
+          error.compareAndSet(null, e);
+          done.complete(null);
+        }
+      } finally {
+        if (running.decrementAndGet() == 0) {
+          done.complete(null);
+        }
+      }
+    };
+    List<FutureTask<Void>> workers = new ArrayList<>(numOfWorkers);
+    for (int i = 0; i < numOfWorkers; i++) {
+      FutureTask<Void> w = new FutureTask<>(worker, null);
+      workers.add(w);
+      executor.execute(w);
+    }
+    try {
+      done.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Fiber.cancellation(e);
+    } catch (ExecutionException e) {
+      // can not happen, done is never completed exceptionally
+    } finally {
+      workers.forEach(w -> w.cancel(true));
+    }
+    if (error.get() != null) {
+      sneakyThrow(error.get());
+    }
+    if (failure.get() != null) {
+      @SuppressWarnings("unchecked")
+      R r = (R) failure.get();
+      return List.of(r);
+    }
+    @SuppressWarnings("unchecked")
+    List<R> list = (List<R>) Arrays.asList(results);
+    return list;
+  }
 }
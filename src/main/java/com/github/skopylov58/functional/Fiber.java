@@ -0,0 +1,200 @@
+package com.github.skopylov58.functional;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lightweight fiber, running {@link ZIO} effect asynchronously.
+ *
+ * <p>
+ * Fibers are started with {@link ZIO#fork()} and run on virtual threads when JVM supports them,
+ * otherwise on the cached pool of daemon platform threads. Fork-join pool is not used for fallback
+ * because effects may block in a way that fork-join pool can not compensate, like {@link Thread#sleep(long)}.
+ *
+ * @param <E> error type
+ * @param <A> result type
+ */
+public final class Fiber<E, A> {
+
+    private static final Executor DEFAULT_EXECUTOR = createDefaultExecutor();
+
+    private final CompletableFuture<Either<E, A>> result = new CompletableFuture<>();
+    private final CompletableFuture<Void> exited = new CompletableFuture<>();
+    private final FutureTask<Either<E, A>> task;
+
+    private <R> Fiber(ZIO<R, E, A> zio, R r) {
+        task = new FutureTask<>(() -> zio.run().apply(r)) {
+            @Override
+            public void run() {
+                try {
+                    super.run();
+                } finally {
+                    exited.complete(null);
+                }
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    result.complete(get());
+                } catch (CancellationException e) {
+                    result.completeExceptionally(e);
+                } catch (ExecutionException e) {
+                    result.completeExceptionally(e.getCause());
+                } catch (InterruptedException e) {
+                    // can not happen, task is done
+                    result.completeExceptionally(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Starts new fiber.
+     * @param <R> environment type
+     * @param <E> error type
+     * @param <A> result type
+     * @param zio effect to run
+     * @param r environment
+     * @param executor executor to run the effect
+     * @return started fiber
+     */
+    public static <R, E, A> Fiber<E, A> start(ZIO<R, E, A> zio, R r, Executor executor) {
+        Fiber<E, A> fiber = new Fiber<>(zio, r);
+        executor.execute(fiber.task);
+        return fiber;
+    }
+
+    /**
+     * Waits for the fiber.
+     * @param <R> environment type
+     * @return effect that waits for fiber's result
+     */
+    public <R> ZIO<R, E, A> join() {
+        return new ZIO<>(__ -> await());
+    }
+
+    /**
+     * Blocks current thread till fiber's completion, which is cheap for virtual threads.
+     * @return fiber's result
+     * @throws CancellationException if fiber was cancelled or current thread was interrupted
+     */
+    public Either<E, A> await() {
+        return await(result);
+    }
+
+    static <E, A> Either<E, A> await(CompletableFuture<Either<E, A>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw cancellation(e);
+        } catch (ExecutionException e) {
+            FPUtils.sneakyThrow(e.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * Cancels fiber, running fiber's thread is interrupted.
+     * Does not wait for the fiber to stop.
+     */
+    public void cancel() {
+        task.cancel(true);
+    }
+
+    /**
+     * Interrupts the fiber and waits till it stops and its finalizers are done.
+     * @param <R> environment type
+     * @return effect of interruption
+     */
+    public <R> ZIO<R, E, Void> interrupt() {
+        return new ZIO<>(__ -> {
+            cancel();
+            try {
+                exited.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw cancellation(e);
+            } catch (ExecutionException e) {
+                // can not happen, exited is never completed exceptionally
+            }
+            return Either.right(null);
+        });
+    }
+
+    /**
+     * Checks if fiber is done.
+     * @return true if fiber has completed, failed or was cancelled.
+     */
+    public boolean isDone() {
+        return result.isDone();
+    }
+
+    /**
+     * Gets fiber's result as future.
+     * @return future
+     */
+    public CompletableFuture<Either<E, A>> toFuture() {
+        return result;
+    }
+
+    /**
+     * Checks interruption of the current thread.
+     * @throws CancellationException if current thread was interrupted
+     */
+    static void checkInterrupted() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Interrupted");
+        }
+    }
+
+    static CancellationException cancellation(Exception cause) {
+        CancellationException e = new CancellationException("Interrupted");
+        e.initCause(cause);
+        return e;
+    }
+
+    /**
+     * Runs runnable with cleared interruption status, restores interruption status after.
+     * @param runnable runnable to run
+     */
+    static void uninterruptibly(Runnable runnable) {
+        boolean interrupted = Thread.interrupted();
+        try {
+            runnable.run();
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Default executor for fibers.
+     * @return virtual thread per task executor if available, otherwise cached thread pool
+     */
+    public static Executor defaultExecutor() {
+        return DEFAULT_EXECUTOR;
+    }
+
+    private static Executor createDefaultExecutor() {
+        try {
+            var method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (Executor) method.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Java < 21 or preview features are not enabled
+            AtomicInteger counter = new AtomicInteger();
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "fiber-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+}
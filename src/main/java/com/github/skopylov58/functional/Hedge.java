@@ -0,0 +1,241 @@
+package com.github.skopylov58.functional;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+import com.github.skopylov58.functional.FPUtils.Backoff;
+import com.github.skopylov58.functional.Try.CheckedSupplier;
+
+/**
+ * Request hedging decorator for tail-latency sensitive calls.
+ *
+ * <p>
+ * Decorated call starts the primary attempt, if it has not finished within hedge delay,
+ * the second (hedged) attempt is started. First successful result wins, the loser is cancelled
+ * with interruption. Hedge delay is given by {@link Backoff}, use {@link Latencies} to get delay
+ * as percentile of recently observed latencies. Number of hedged attempts is limited by {@link RateLimiter}.
+ *
+ * <pre>
+ *   Hedge hedge = Hedge.of(0.95, RateLimiter.of(10, Duration.ofSeconds(1)), executor);
+ *   Callable&lt;String&gt; read = hedge.decorate(() -&gt; readFromReplica());
+ * </pre>
+ *
+ * @author skopylov@gmail.com
+ */
+public class Hedge {
+
+  private final Backoff delay;
+  private final RateLimiter hedgeLimiter;
+  private final Executor executor;
+  private final AtomicLong hedges = new AtomicLong();
+
+  private Hedge(Backoff delay, RateLimiter hedgeLimiter, Executor executor) {
+    this.delay = delay;
+    this.hedgeLimiter = hedgeLimiter;
+    this.executor = executor;
+  }
+
+  /**
+   * Creates hedge with given hedge delay.
+   * @param delay hedge delay, is called with 1 as parameter
+   * @param hedgeLimiter limits rate of hedged attempts
+   * @param executor executor to run attempts
+   * @return hedge
+   */
+  public static Hedge of(Backoff delay, RateLimiter hedgeLimiter, Executor executor) {
+    return new Hedge(delay, hedgeLimiter, executor);
+  }
+
+  /**
+   * Creates hedge with delay tracked as percentile of recent latencies.
+   * Hedge delay is 100 ms until enough latencies are observed.
+   * @param percentile percentile of latencies, between 0 and 1, for example 0.95
+   * @param hedgeLimiter limits rate of hedged attempts
+   * @param executor executor to run attempts
+   * @return hedge
+   */
+  public static Hedge of(double percentile, RateLimiter hedgeLimiter, Executor executor) {
+    return of(new Latencies(256, percentile, Duration.ofMillis(100)), hedgeLimiter, executor);
+  }
+
+  /**
+   * Gets hedge delay.
+   * @return hedge delay, may be used as retry backoff also
+   */
+  public Backoff delay() {
+    return delay;
+  }
+
+  /**
+   * Number of hedged attempts started.
+   * @return number of hedges
+   */
+  public long hedges() {
+    return hedges.get();
+  }
+
+  /**
+   * Decorates supplier with hedging.
+   * @param <T> result type
+   * @param supplier supplier to decorate
+   * @return supplier of future result
+   */
+  public <T> Supplier<CompletableFuture<T>> decorateAsync(CheckedSupplier<T> supplier) {
+    return () -> call(supplier::get);
+  }
+
+  /**
+   * Decorates callable with hedging, decorated callable waits for the first result.
+   * @param <T> result type
+   * @param callable callable to decorate
+   * @return blocking callable
+   */
+  public <T> Callable<T> decorate(Callable<T> callable) {
+    return () -> {
+      CompletableFuture<T> future = call(callable);
+      try {
+        return future.get();
+      } catch (InterruptedException e) {
+        future.cancel(true);
+        throw e;
+      } catch (ExecutionException e) {
+        throw e.getCause() instanceof Exception ex ? ex : e;
+      }
+    };
+  }
+
+  <T> CompletableFuture<T> call(Callable<T> callable) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    AtomicInteger outstanding = new AtomicInteger(1);
+    long start = System.nanoTime();
+    executor.execute(attempt(callable, result, outstanding, start, true));
+
+    Duration hedgeDelay = delay.apply(1L);
+    ScheduledFuture<?> timeout = WheelTimer.shared().schedule(() -> {
+      if (result.isDone() || !hedgeLimiter.tryAcquire()) {
+        return;
+      }
+      if (outstanding.getAndUpdate(c -> c == 0 ? 0 : c + 1) == 0) {
+        return; // primary has already failed
+      }
+      hedges.incrementAndGet();
+      // not on the timer thread, executor may run the attempt in the calling thread
+      WheelTimer.handOff(attempt(callable, result, outstanding, start, false), executor);
+    }, hedgeDelay.toNanos(), TimeUnit.NANOSECONDS);
+    result.whenComplete((v, e) -> timeout.cancel(false));
+    return result;
+  }
+
+  /**
+   * Creates attempt task, which is cancelled with interruption when result is completed by another attempt.
+   * Latency of the primary attempt is recorded in any case, if the primary loses, its latency is recorded
+   * at the moment it is cancelled, which is not less than hedge delay.
+   */
+  private <T> FutureTask<Void> attempt(Callable<T> callable, CompletableFuture<T> result, AtomicInteger outstanding,
+      long start, boolean primary) {
+    AtomicBoolean finished = new AtomicBoolean();
+    FutureTask<Void> task = new FutureTask<>(() -> {
+      try {
+        T t = callable.call();
+        if (finished.compareAndSet(false, true)) {
+          recordLatency(start, primary);
+        }
+        result.complete(t);
+      } catch (Exception e) {
+        if (finished.compareAndSet(false, true)) {
+          recordLatency(start, primary);
+        }
+        if (outstanding.decrementAndGet() == 0) {
+          result.completeExceptionally(e);
+        }
+      }
+      return null;
+    });
+    // finished attempt, including the one completing the result, must not be interrupted
+    result.whenComplete((v, e) -> {
+      if (finished.compareAndSet(false, true)) {
+        recordLatency(start, primary);
+        task.cancel(true);
+      }
+    });
+    return task;
+  }
+
+  private void recordLatency(long start, boolean primary) {
+    if (primary && delay instanceof Latencies lat) {
+      lat.record(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Tracks recent latencies in the ring buffer and gives delay as given percentile of them.
+   */
+  public static class Latencies implements Backoff {
+
+    private final AtomicLongArray samples;
+    private final AtomicLong count = new AtomicLong();
+    private final double percentile;
+    private final Duration initial;
+    private volatile Duration cached;
+    private volatile long cachedAt = -1;
+
+    /**
+     * Constructor.
+     * @param window number of recent latencies to track
+     * @param percentile percentile, between 0 and 1
+     * @param initial delay to use until window is filled by 1/4
+     */
+    public Latencies(int window, double percentile, Duration initial) {
+      if (window <= 0 || percentile <= 0 || percentile > 1) {
+        throw new IllegalArgumentException();
+      }
+      samples = new AtomicLongArray(window);
+      this.percentile = percentile;
+      this.initial = initial;
+    }
+
+    /**
+     * Records latency.
+     * @param nanos latency in nanoseconds
+     */
+    public void record(long nanos) {
+      long i = count.getAndIncrement();
+      samples.set((int) (i % samples.length()), nanos);
+    }
+
+    @Override
+    public Duration apply(Long attempt) {
+      long n = Math.min(count.get(), samples.length());
+      if (n < samples.length() / 4 + 1) {
+        return initial;
+      }
+      // sorting is amortized, percentile is recalculated after each 1/16 of window
+      long c = count.get();
+      if (cachedAt >= 0 && c - cachedAt < samples.length() / 16 + 1) {
+        return cached;
+      }
+      long[] arr = new long[(int) n];
+      for (int i = 0; i < n; i++) {
+        arr[i] = samples.get(i);
+      }
+      Arrays.sort(arr);
+      int idx = (int) Math.min(n - 1, Math.ceil(percentile * n) - 1);
+      Duration res = Duration.ofNanos(arr[Math.max(0, idx)]);
+      cached = res;
+      cachedAt = c;
+      return res;
+    }
+  }
+}
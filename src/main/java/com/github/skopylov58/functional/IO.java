@@ -1,32 +1,335 @@
 package com.github.skopylov58.functional;
 
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
+import com.github.skopylov58.functional.Try.CheckedSupplier;
+
+/**
+ * IO effect.
+ *
+ * <p>
+ * {@link #map(Function)} and {@link #flatMap(Function)} do not nest lambdas, they build
+ * reified {@link Mapped} and {@link FlatMapped} nodes. Long chains are run by iterative loop
+ * with heap allocated continuation stack, so millions of chained flatMaps
+ * (including recursive loops written in IO) run in constant Java stack.
+ * Short chains are run by plain recursion which needs no allocations.
+ * Any lambda implementing {@link #run()} is a leaf effect of the chain.
+ *
+ * <p>
+ * Interruption of the running thread is checked at each flatMap boundary,
+ * interrupted IO throws {@link CancellationException}.
+ *
+ * @param <T> result type
+ */
 interface IO<T> {
 
   T run();
-  
+
   static <T> IO<T> of(Supplier<T> s) {
-    return s::get;
+    return new Suspend<>(Tracing.isEnabled() ? Tracing.trace("IO.of", s) : s);
   }
 
   static <T> IO<T> of(T t) {
-    return () -> t;
+    return pure(t);
+  }
+
+  static <T> IO<T> pure(T t) {
+    return new Pure<>(t);
+  }
+
+  /**
+   * Defers creation of IO till run time, useful for recursive IO loops.
+   * @param <T> result type
+   * @param s IO supplier
+   * @return IO
+   */
+  static <T> IO<T> defer(Supplier<IO<T>> s) {
+    return new FlatMapped<>(pure(null), __ -> s.get());
   }
 
   static <T> IO<Void> consume(T t, Consumer<T> c) {
     c.accept(t);
     return () -> null;
   }
-  
+
+  /**
+   * Applies effectful function to the list elements and runs resulting effects sequentially.
+   * All effects are created before running the first one, so that {@link DataLoader} lookups are batched.
+   * @param <T> element type
+   * @param <R> result type
+   * @param list elements
+   * @param f effectful function
+   * @return IO producing list of results
+   */
+  static <T, R> IO<List<R>> traverse(List<T> list, Function<? super T, ? extends IO<? extends R>> f) {
+    return defer(() -> sequence(list.stream().<IO<? extends R>>map(f).toList()));
+  }
+
+  /**
+   * Runs effects sequentially.
+   * @param <T> result type
+   * @param ios effects
+   * @return IO producing list of results
+   */
+  static <T> IO<List<T>> sequence(List<? extends IO<? extends T>> ios) {
+    return of(() -> {
+      List<T> res = new ArrayList<>(ios.size());
+      for (IO<? extends T> io : ios) {
+        res.add(io.run());
+      }
+      return res;
+    });
+  }
+
+  static <T, R> IO<List<R>> parTraverse(List<T> list, Function<? super T, ? extends IO<? extends R>> f,
+      int parallelism) {
+    return parTraverse(list, f, parallelism, true);
+  }
+
+  /**
+   * Applies effectful function to the list elements and runs resulting effects concurrently on fibers.
+   * On the first failure remaining effects are not started, running ones are interrupted and IO throws the failure.
+   * @param <T> element type
+   * @param <R> result type
+   * @param list elements
+   * @param f effectful function
+   * @param parallelism max number of concurrently running effects
+   * @param ordered true to keep elements order, otherwise results are in completion order
+   * @return IO producing list of results
+   */
+  static <T, R> IO<List<R>> parTraverse(List<T> list, Function<? super T, ? extends IO<? extends R>> f,
+      int parallelism, boolean ordered) {
+    return defer(() -> parSequence(list.stream().<IO<? extends R>>map(f).toList(), parallelism, ordered));
+  }
+
+  static <T> IO<List<T>> parSequence(List<? extends IO<? extends T>> ios, int parallelism) {
+    return parSequence(ios, parallelism, true);
+  }
+
+  /**
+   * Runs effects concurrently on fibers.
+   * @param <T> result type
+   * @param ios effects
+   * @param parallelism max number of concurrently running effects
+   * @param ordered true to keep effects order, otherwise results are in completion order
+   * @return IO producing list of results
+   */
+  static <T> IO<List<T>> parSequence(List<? extends IO<? extends T>> ios, int parallelism, boolean ordered) {
+    return of(() -> FPUtils.<IO<? extends T>, T>parRun(List.copyOf(ios), IO::run, parallelism, ordered,
+        Fiber.defaultExecutor(), __ -> false));
+  }
+
   default <R> IO<R> flatMap(Function<? super T, IO<? extends R>> mapper) {
-    return () -> mapper.apply(run()).run();
+    return new FlatMapped<>(this, Tracing.isEnabled() ? Tracing.trace("IO.flatMap", mapper) : mapper);
   }
 
   default <R> IO<R> map(Function<? super T, ? extends R> mapper) {
-    return () -> mapper.apply(run());
+    return new Mapped<>(this, Tracing.isEnabled() ? Tracing.trace("IO.map", mapper) : mapper);
+  }
+
+  /**
+   * Traces this IO as the single stage when {@link Tracing} is enabled.
+   * @param label stage label
+   * @return traced IO or this IO if tracing is disabled
+   */
+  default IO<T> traced(String label) {
+    return Tracing.isEnabled() ? new Suspend<>(Tracing.trace(label, (Supplier<T>) this::run)) : this;
+  }
+
+  /**
+   * Caches result of this IO for TTL, see {@link #cached(Duration, TimeSource)}.
+   * @param ttl time to live of the result
+   * @return caching IO
+   */
+  default IO<T> cached(Duration ttl) {
+    return cached(ttl, TimeSource.system());
+  }
+
+  /**
+   * Caches result of this IO for TTL. This IO is run at most once per TTL, concurrent runs of caching IO
+   * join the run in progress. Failures are not cached, expired result is refreshed by the next run.
+   * @param ttl time to live of the result
+   * @param timeSource time source
+   * @return caching IO
+   */
+  default IO<T> cached(Duration ttl, TimeSource timeSource) {
+    Cached<T> cache = new Cached<>(ttl, timeSource, __ -> false);
+    return new Suspend<>(() -> cache.get(this::run));
   }
 
+  /**
+   * Runs finalizer after this IO in any case, finalizer itself is not interruptible.
+   * @param finalizer finalizer
+   * @return IO with finalizer
+   */
+  default IO<T> ensuring(Runnable finalizer) {
+    return () -> {
+      try {
+        return run();
+      } finally {
+        Fiber.uninterruptibly(finalizer);
+      }
+    };
+  }
+
+  /**
+   * Runs finalizer if this IO was interrupted, finalizer itself is not interruptible.
+   * @param finalizer finalizer
+   * @return IO with finalizer
+   */
+  default IO<T> onInterrupt(Runnable finalizer) {
+    return () -> {
+      try {
+        return run();
+      } catch (CancellationException e) {
+        Fiber.uninterruptibly(finalizer);
+        throw e;
+      }
+    };
+  }
+
+  /**
+   * Creates IO from blocking supplier, interruption of the supplier is translated to {@link CancellationException},
+   * other exceptions are rethrown as is.
+   * @param <T> result type
+   * @param supplier blocking supplier
+   * @return IO
+   */
+  static <T> IO<T> blocking(CheckedSupplier<T> supplier) {
+    return () -> {
+      Fiber.checkInterrupted();
+      try {
+        return supplier.get();
+      } catch (InterruptedException | InterruptedIOException | ClosedByInterruptException e) {
+        Thread.currentThread().interrupt();
+        throw Fiber.cancellation(e);
+      } catch (Exception e) {
+        FPUtils.sneakyThrow(e);
+        return null;
+      }
+    };
+  }
+
+  record Pure<T>(T value) implements IO<T> {
+    @Override
+    public T run() {
+      return value;
+    }
+  }
+
+  record Suspend<T>(Supplier<T> supplier) implements IO<T> {
+    @Override
+    public T run() {
+      return supplier.get();
+    }
+  }
+
+  /**
+   * Map node.
+   * @param depth length of the chain below this node, short chains are run recursively
+   */
+  record Mapped<S, T>(IO<S> source, Function<? super S, ? extends T> mapper, int depth) implements IO<T>, RunLoop.Step {
+    Mapped(IO<S> source, Function<? super S, ? extends T> mapper) {
+      this(source, mapper, chainDepth(source) + 1);
+    }
+
+    @Override
+    public T run() {
+      return depth < MAX_RECURSION_DEPTH ? mapper.apply(source.run()) : runLoop(this);
+    }
+
+    @Override
+    public boolean flat() {
+      return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object next(Object value) {
+      return mapper.apply((S) value);
+    }
+  }
+
+  /**
+   * FlatMap node.
+   * @param depth length of the chain below this node, short chains are run recursively
+   */
+  record FlatMapped<S, T>(IO<S> source, Function<? super S, IO<? extends T>> mapper, int depth) implements IO<T>, RunLoop.Step {
+    FlatMapped(IO<S> source, Function<? super S, IO<? extends T>> mapper) {
+      this(source, mapper, chainDepth(source) + 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T run() {
+      if (depth >= MAX_RECURSION_DEPTH) {
+        return runLoop(this);
+      }
+      // fast path for the short chain ending with the leaf effect, no loop variables to keep allocations local
+      S value = source.run();
+      Fiber.checkInterrupted();
+      IO<? extends T> next = mapper.apply(value);
+      return next instanceof Mapped || next instanceof FlatMapped ? (T) runChain(next) : next.run();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object runChain(IO<?> io) {
+      IO cur = io;
+      // loop on flatMap results and never run resulting chains recursively,
+      // so that recursive IO loops do not grow Java stack
+      while (cur instanceof FlatMapped fm && fm.depth < MAX_RECURSION_DEPTH) {
+        Object value = fm.source.run();
+        Fiber.checkInterrupted();
+        cur = (IO) fm.mapper.apply(value);
+      }
+      return chainDepth(cur) == 0 ? cur.run() : runLoop(cur);
+    }
+
+    @Override
+    public boolean flat() {
+      return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object next(Object value) {
+      Fiber.checkInterrupted();
+      return mapper.apply((S) value);
+    }
+  }
+
+  /** Chains shorter than this are run with plain recursion, longer ones by run loop */
+  static final int MAX_RECURSION_DEPTH = 32;
+
+  private static int chainDepth(IO<?> io) {
+    if (io instanceof Mapped<?, ?> m) {
+      return m.depth;
+    }
+    if (io instanceof FlatMapped<?, ?> fm) {
+      return fm.depth;
+    }
+    return 0;
+  }
+
+  /**
+   * Runs long chain by the shared iterative interpreter.
+   */
+  @SuppressWarnings("unchecked")
+  private static <T> T runLoop(IO<T> io) {
+    RunLoop loop = new RunLoop() {
+      @Override
+      Object leaf(Object leaf) {
+        return ((IO<?>) leaf).run();
+      }
+    };
+    return (T) loop.run(io);
+  }
 }
@@ -1,5 +1,8 @@
 package com.github.skopylov58.functional;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 public interface IO2<C, T>  {
@@ -28,4 +31,106 @@ public interface IO2<C, T>  {
     return c -> Option.some(t);
   }
 
+  static <C, T, R> IO2<C, List<R>> parTraverse(List<T> list, Function<? super T, ? extends IO2<C, ? extends R>> f,
+      int parallelism) {
+    return parTraverse(list, f, parallelism, true);
+  }
+
+  /**
+   * Applies effectful function to the list elements and runs resulting effects concurrently on fibers.
+   * On the first failed monad (like {@link Option.None} or {@link Result.Failure}) remaining effects
+   * are not started, running ones are interrupted and the failure is returned.
+   * Results are combined with {@link Monad#bind(Function)}, so empty list gives {@code Option.some(List.of())}.
+   * @param <C> context type
+   * @param <T> element type
+   * @param <R> result type
+   * @param list elements
+   * @param f effectful function
+   * @param parallelism max number of concurrently running effects
+   * @param ordered true to keep elements order, otherwise results are in completion order
+   * @return effect producing list of results
+   */
+  static <C, T, R> IO2<C, List<R>> parTraverse(List<T> list, Function<? super T, ? extends IO2<C, ? extends R>> f,
+      int parallelism, boolean ordered) {
+    return ctx -> IO2.<C, R>parSequence(list.stream().<IO2<C, ? extends R>>map(f).toList(), parallelism, ordered)
+        .run(ctx);
+  }
+
+  static <C, T> IO2<C, List<T>> parSequence(List<? extends IO2<C, ? extends T>> ios, int parallelism) {
+    return parSequence(ios, parallelism, true);
+  }
+
+  /**
+   * Runs effects concurrently on fibers.
+   * @param <C> context type
+   * @param <T> result type
+   * @param ios effects
+   * @param parallelism max number of concurrently running effects
+   * @param ordered true to keep effects order, otherwise results are in completion order
+   * @return effect producing list of results or the first failure
+   */
+  @SuppressWarnings("unchecked")
+  static <C, T> IO2<C, List<T>> parSequence(List<? extends IO2<C, ? extends T>> ios, int parallelism, boolean ordered) {
+    List<IO2<C, ? extends T>> effects = List.copyOf(ios);
+    return ctx -> {
+      List<Monad<T>> monads = FPUtils.<IO2<C, ? extends T>, Monad<T>>parRun(effects, io -> (Monad<T>) io.run(ctx),
+          parallelism, ordered, Fiber.defaultExecutor(), m -> m.stream().count() == 0);
+      Monad<List<T>> res = Option.some(new ArrayList<>(monads.size()));
+      for (Monad<T> m : monads) {
+        res = res.bind(acc -> m.map(t -> {
+          acc.add(t);
+          return acc;
+        }));
+      }
+      return res;
+    };
+  }
+
+  /**
+   * Acquires resource, uses it and releases it. Release is run if use succeeds, fails or throws.
+   * @param <C> context type
+   * @param <A> resource type
+   * @param <B> result type
+   * @param acquire acquires resource
+   * @param release releases resource
+   * @param use uses resource
+   * @return effect
+   */
+  static <C, A, B> IO2<C, B> bracket(IO2<C, A> acquire, Consumer<? super A> release,
+      Function<? super A, IO2<C, B>> use) {
+    return ctx -> acquire.run(ctx).bind(a -> {
+      try {
+        return use.apply(a).run(ctx);
+      } finally {
+        Fiber.uninterruptibly(() -> release.accept(a));
+      }
+    });
+  }
+
+  /**
+   * Uses object borrowed from the pool. Object is returned to the pool after use,
+   * if use throws the object is invalidated. Borrow failure is {@link Result.Failure}.
+   * @param <C> context type
+   * @param <T> pooled object type
+   * @param <B> result type
+   * @param pool pool
+   * @param use uses pooled object
+   * @return effect
+   */
+  static <C, T, B> IO2<C, B> withPooled(Pool<T> pool, Function<? super T, IO2<C, B>> use) {
+    return ctx -> pool.borrow().<Monad<B>>fold(t -> {
+      boolean ok = false;
+      try {
+        Monad<B> res = use.apply(t).run(ctx);
+        ok = true;
+        return res;
+      } finally {
+        if (ok) {
+          pool.release(t);
+        } else {
+          Fiber.uninterruptibly(() -> pool.invalidate(t));
+        }
+      }
+    }, Result::failure);
+  }
 }
@@ -0,0 +1,108 @@
+package com.github.skopylov58.functional;
+
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * State monad specialized for {@code int} state, like counters and offsets.
+ *
+ * <p>
+ * State is kept unboxed in the mutable {@link Cell} during the run, steps read and update the cell
+ * instead of returning tuples. Chains are run by the iterative interpreter shared with {@link State}, so they are stack-safe.
+ *
+ * @param <T> value type
+ */
+@FunctionalInterface
+public interface IntState<T> {
+
+  /**
+   * Runs the state monad, initial state is taken from the cell, final state is left in the cell.
+   * @param cell state cell
+   * @return value
+   */
+  T run(Cell cell);
+
+  static <T> IntState<T> pure(T t) {
+    return cell -> t;
+  }
+
+  /**
+   * Gets the current state as the value, the value is boxed.
+   * @return state monad
+   */
+  static IntState<Integer> get() {
+    return cell -> cell.value;
+  }
+
+  static <T> IntState<T> gets(IntFunction<? extends T> f) {
+    return cell -> f.apply(cell.value);
+  }
+
+  static IntState<Void> put(int s) {
+    return cell -> {
+      cell.value = s;
+      return null;
+    };
+  }
+
+  static IntState<Void> modify(IntUnaryOperator f) {
+    return cell -> {
+      cell.value = f.applyAsInt(cell.value);
+      return null;
+    };
+  }
+
+  default <R> IntState<R> map(Function<? super T, ? extends R> mapper) {
+    return new StateSteps.IntMapped<>(this, mapper);
+  }
+
+  default <R> IntState<R> flatMap(Function<? super T, IntState<R>> mapper) {
+    return new StateSteps.IntFlatMapped<>(this, mapper);
+  }
+
+  /**
+   * Runs the state monad.
+   * @param state initial state
+   * @return value and final state
+   */
+  default Tuple<T, Integer> apply(int state) {
+    Cell cell = new Cell(state);
+    T t = run(cell);
+    return new Tuple<>(t, cell.value);
+  }
+
+  default T eval(int state) {
+    return run(new Cell(state));
+  }
+
+  default int exec(int state) {
+    Cell cell = new Cell(state);
+    run(cell);
+    return cell.value;
+  }
+
+  /**
+   * Mutable holder of the state, runs chains of steps.
+   */
+  final class Cell extends RunLoop {
+    int value;
+
+    public Cell(int value) {
+      this.value = value;
+    }
+
+    public int get() {
+      return value;
+    }
+
+    public void set(int value) {
+      this.value = value;
+    }
+
+    @Override
+    Object leaf(Object leaf) {
+      return ((IntState<?>) leaf).run(this);
+    }
+  }
+}
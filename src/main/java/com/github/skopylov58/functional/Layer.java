@@ -0,0 +1,230 @@
+package com.github.skopylov58.functional;
+
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.github.skopylov58.functional.Try.CheckedFunction;
+import com.github.skopylov58.functional.Try.CheckedSupplier;
+
+/**
+ * Layer is a memoized constructor of the {@link ZIO} environment (or its piece).
+ *
+ * <p>
+ * Layers depend on other layers with {@link #to(CheckedFunction)}, independent layers are combined
+ * with {@link #zipPar(Layer, BiFunction)} and are built concurrently. Layer is built at most once per
+ * {@link Scope}, even if many layers depend on it. Resources acquired by {@link #scoped(CheckedSupplier, Consumer)}
+ * layers are released when scope is closed, in the reverse order of acquisition.
+ *
+ * <pre>
+ *   Layer&lt;Config&gt; config = Layer.of(Config::load);
+ *   Layer&lt;Pool&lt;Client&gt;&gt; clients = config.toScoped(c -&gt; Pool.of(c::newClient, Client::close, c.poolSize()),
+ *           Pool::close);
+ *   Layer&lt;Cache&gt; cache = config.to(Cache::new);
+ *   Layer&lt;Env&gt; env = clients.zipPar(cache, Env::new);
+ *
+ *   try (var built = env.build().orElseThrow()) {
+ *       app.run().apply(built.value());
+ *   }
+ * </pre>
+ *
+ * @param <A> type of constructed value
+ */
+public final class Layer<A> {
+
+    private final CheckedFunction<Scope, A> constructor;
+
+    private Layer(CheckedFunction<Scope, A> constructor) {
+        this.constructor = constructor;
+    }
+
+    /**
+     * Creates layer from constructor.
+     * @param <A> value type
+     * @param constructor constructor
+     * @return layer
+     */
+    public static <A> Layer<A> of(CheckedSupplier<A> constructor) {
+        return new Layer<>(__ -> constructor.get());
+    }
+
+    /**
+     * Creates layer from already built value.
+     * @param <A> value type
+     * @param value value
+     * @return layer
+     */
+    public static <A> Layer<A> succeed(A value) {
+        return new Layer<>(__ -> value);
+    }
+
+    /**
+     * Creates layer from resource which is released when scope is closed.
+     * @param <A> resource type
+     * @param acquire acquires resource
+     * @param release releases resource
+     * @return layer
+     */
+    public static <A> Layer<A> scoped(CheckedSupplier<A> acquire, Consumer<? super A> release) {
+        return new Layer<>(scope -> scope.acquire(acquire.get(), release));
+    }
+
+    /**
+     * Creates layer depending on this layer.
+     * @param <B> new value type
+     * @param constructor constructs new value from this layer's value
+     * @return new layer
+     */
+    public <B> Layer<B> to(CheckedFunction<? super A, ? extends B> constructor) {
+        return new Layer<>(scope -> constructor.apply(scope.get(this)));
+    }
+
+    /**
+     * Creates scoped layer depending on this layer.
+     * @param <B> resource type
+     * @param acquire acquires resource using this layer's value
+     * @param release releases resource
+     * @return new layer
+     */
+    public <B> Layer<B> toScoped(CheckedFunction<? super A, ? extends B> acquire, Consumer<? super B> release) {
+        return new Layer<>(scope -> scope.acquire(acquire.apply(scope.get(this)), release));
+    }
+
+    /**
+     * Maps layer value.
+     * @param <B> new value type
+     * @param mapper mapper
+     * @return new layer
+     */
+    public <B> Layer<B> map(Function<? super A, ? extends B> mapper) {
+        return new Layer<>(scope -> mapper.apply(scope.get(this)));
+    }
+
+    /**
+     * Combines this and that layers, which are built concurrently.
+     * If any of them fails, the other one is still awaited so that its resources are released with the scope.
+     * @param <B> that value type
+     * @param <C> combined value type
+     * @param that layer to build concurrently with this one
+     * @param combiner value combiner
+     * @return combined layer
+     */
+    public <B, C> Layer<C> zipPar(Layer<B> that, BiFunction<? super A, ? super B, ? extends C> combiner) {
+        return new Layer<>(scope -> {
+            CompletableFuture<B> fb = CompletableFuture.supplyAsync(() -> scope.get(that), Fiber.defaultExecutor());
+            Try<A> a = Try.of(() -> scope.get(this));
+            Try<B> b = Try.of(() -> join(fb));
+            return combiner.apply(rethrow(a), rethrow(b));
+        });
+    }
+
+    /**
+     * Builds layer in the new scope. If building fails, the scope is closed.
+     * @return built value with its scope, or failure
+     */
+    public Try<Built<A>> build() {
+        Scope scope = new Scope();
+        return Try.of(() -> new Built<>(scope.get(this), scope))
+                .onFailure(e -> scope.close());
+    }
+
+    /**
+     * Built layer value with the scope owning its resources.
+     * @param <A> value type
+     */
+    public record Built<A>(A value, Scope scope) implements AutoCloseable {
+        @Override
+        public void close() {
+            scope.close();
+        }
+    }
+
+    /**
+     * Scope memoizes built layers and holds finalizers of acquired resources.
+     */
+    public static final class Scope implements AutoCloseable {
+
+        private final Map<Layer<?>, CompletableFuture<Object>> memo = new ConcurrentHashMap<>();
+        private final Deque<Runnable> finalizers = new ConcurrentLinkedDeque<>();
+        private volatile boolean closed;
+
+        /**
+         * Gets layer value, building the layer if it is not built yet in this scope.
+         * Concurrent callers wait for the single build.
+         * @param <A> value type
+         * @param layer layer
+         * @return layer value
+         */
+        @SuppressWarnings("unchecked")
+        public <A> A get(Layer<A> layer) {
+            if (closed) {
+                throw new IllegalStateException("Scope is closed");
+            }
+            CompletableFuture<Object> future = new CompletableFuture<>();
+            CompletableFuture<Object> existing = memo.putIfAbsent(layer, future);
+            if (existing != null) {
+                return (A) join(existing);
+            }
+            try {
+                A a = layer.constructor.apply(this);
+                future.complete(a);
+                return a;
+            } catch (Exception | Error e) {
+                future.completeExceptionally(e);
+                FPUtils.sneakyThrow(e);
+                return null;
+            }
+        }
+
+        <A> A acquire(A resource, Consumer<? super A> release) {
+            finalizers.addFirst(() -> release.accept(resource));
+            return resource;
+        }
+
+        /**
+         * Releases acquired resources in reverse order.
+         * All finalizers are run, the first finalizer's failure is rethrown with others suppressed.
+         */
+        @Override
+        public void close() {
+            closed = true;
+            RuntimeException failure = null;
+            for (Runnable r = finalizers.pollFirst(); r != null; r = finalizers.pollFirst()) {
+                try {
+                    Fiber.uninterruptibly(r);
+                } catch (RuntimeException e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private static <T> T rethrow(Try<T> t) {
+        return t.fold(Function.identity(), e -> {
+            FPUtils.sneakyThrow(e);
+            return null;
+        });
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            FPUtils.sneakyThrow(e.getCause());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.github.skopylov58.functional;
+
+import java.util.function.Function;
+import java.util.function.LongFunction;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * State monad specialized for {@code long} state, like offsets and accumulators.
+ *
+ * <p>
+ * State is kept unboxed in the mutable {@link Cell} during the run, steps read and update the cell
+ * instead of returning tuples. Chains are run by the iterative interpreter shared with {@link State}, so they are stack-safe.
+ *
+ * @param <T> value type
+ */
+@FunctionalInterface
+public interface LongState<T> {
+
+  /**
+   * Runs the state monad, initial state is taken from the cell, final state is left in the cell.
+   * @param cell state cell
+   * @return value
+   */
+  T run(Cell cell);
+
+  static <T> LongState<T> pure(T t) {
+    return cell -> t;
+  }
+
+  /**
+   * Gets the current state as the value, the value is boxed.
+   * @return state monad
+   */
+  static LongState<Long> get() {
+    return cell -> cell.value;
+  }
+
+  static <T> LongState<T> gets(LongFunction<? extends T> f) {
+    return cell -> f.apply(cell.value);
+  }
+
+  static LongState<Void> put(long s) {
+    return cell -> {
+      cell.value = s;
+      return null;
+    };
+  }
+
+  static LongState<Void> modify(LongUnaryOperator f) {
+    return cell -> {
+      cell.value = f.applyAsLong(cell.value);
+      return null;
+    };
+  }
+
+  default <R> LongState<R> map(Function<? super T, ? extends R> mapper) {
+    return new StateSteps.LongMapped<>(this, mapper);
+  }
+
+  default <R> LongState<R> flatMap(Function<? super T, LongState<R>> mapper) {
+    return new StateSteps.LongFlatMapped<>(this, mapper);
+  }
+
+  /**
+   * Runs the state monad.
+   * @param state initial state
+   * @return value and final state
+   */
+  default Tuple<T, Long> apply(long state) {
+    Cell cell = new Cell(state);
+    T t = run(cell);
+    return new Tuple<>(t, cell.value);
+  }
+
+  default T eval(long state) {
+    return run(new Cell(state));
+  }
+
+  default long exec(long state) {
+    Cell cell = new Cell(state);
+    run(cell);
+    return cell.value;
+  }
+
+  /**
+   * Mutable holder of the state, runs chains of steps.
+   */
+  final class Cell extends RunLoop {
+    long value;
+
+    public Cell(long value) {
+      this.value = value;
+    }
+
+    public long get() {
+      return value;
+    }
+
+    public void set(long value) {
+      this.value = value;
+    }
+
+    @Override
+    Object leaf(Object leaf) {
+      return ((LongState<?>) leaf).run(this);
+    }
+  }
+}
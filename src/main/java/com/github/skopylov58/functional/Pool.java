@@ -0,0 +1,235 @@
+package com.github.skopylov58.functional;
+
+import java.time.Duration;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import com.github.skopylov58.functional.Try.CheckedFunction;
+import com.github.skopylov58.functional.Try.CheckedSupplier;
+
+/**
+ * Bounded pool of reusable objects like sockets, buffers or parsers.
+ *
+ * <p>
+ * Idle objects are kept in the lock-free deque, the most recently used object is borrowed first
+ * (it is most likely alive and cache hot), so objects unused for idle timeout sink to the tail
+ * and are evicted from there. Number of borrowed objects is bounded by the semaphore, which
+ * acquires permits with CAS on the fast path. Objects are validated on borrow, invalid objects are
+ * destroyed and replaced.
+ *
+ * <pre>
+ *   Pool&lt;Socket&gt; pool = Pool.of(() -&gt; new Socket(host, port), s -&gt; Try.of(s::close), s -&gt; !s.isClosed(), 10,
+ *       Duration.ofMinutes(1), Duration.ofSeconds(5));
+ *   Try&lt;Integer&gt; res = pool.withPooled(s -&gt; send(s, request));
+ * </pre>
+ *
+ * @param <T> pooled object type
+ * @author skopylov@gmail.com
+ */
+public class Pool<T> implements AutoCloseable {
+
+  private record Entry<T>(T object, long releasedAt) {}
+
+  private final CheckedSupplier<T> factory;
+  private final Consumer<? super T> destroyer;
+  private final Predicate<? super T> validator;
+  private final int maxSize;
+  private final long idleTimeoutNanos;
+  private final long borrowTimeoutNanos;
+  private final TimeSource timeSource;
+  private final Deque<Entry<T>> idle = new ConcurrentLinkedDeque<>();
+  private final AtomicInteger idleCount = new AtomicInteger();
+  private final Semaphore permits;
+  private volatile boolean closed;
+
+  Pool(CheckedSupplier<T> factory, Consumer<? super T> destroyer, Predicate<? super T> validator, int maxSize,
+      Duration idleTimeout, Duration borrowTimeout, TimeSource timeSource) {
+    if (maxSize <= 0 || idleTimeout.isNegative() || borrowTimeout.isNegative()) {
+      throw new IllegalArgumentException();
+    }
+    this.factory = factory;
+    this.destroyer = destroyer;
+    this.validator = validator;
+    this.maxSize = maxSize;
+    this.idleTimeoutNanos = idleTimeout.toNanos();
+    this.borrowTimeoutNanos = borrowTimeout.toNanos();
+    this.timeSource = timeSource;
+    this.permits = new Semaphore(maxSize);
+  }
+
+  /**
+   * Creates pool without validation and idle eviction, borrowing waits for free object.
+   * @param <T> pooled object type
+   * @param factory creates new objects
+   * @param destroyer destroys objects
+   * @param maxSize max number of objects
+   * @return pool
+   */
+  public static <T> Pool<T> of(CheckedSupplier<T> factory, Consumer<? super T> destroyer, int maxSize) {
+    return of(factory, destroyer, t -> true, maxSize, Duration.ofNanos(Long.MAX_VALUE), Duration.ofNanos(Long.MAX_VALUE));
+  }
+
+  /**
+   * Creates pool.
+   * @param <T> pooled object type
+   * @param factory creates new objects
+   * @param destroyer destroys objects
+   * @param validator validates idle object on borrow
+   * @param maxSize max number of objects
+   * @param idleTimeout objects idle longer than timeout are evicted
+   * @param borrowTimeout max time to wait for free object
+   * @return pool
+   */
+  public static <T> Pool<T> of(CheckedSupplier<T> factory, Consumer<? super T> destroyer,
+      Predicate<? super T> validator, int maxSize, Duration idleTimeout, Duration borrowTimeout) {
+    return new Pool<>(factory, destroyer, validator, maxSize, idleTimeout, borrowTimeout, TimeSource.system());
+  }
+
+  /**
+   * Borrows object from the pool, waits for free object up to borrow timeout.
+   * @return borrowed object or failure with {@link TimeoutException}, {@link InterruptedException}
+   * or exception of the object factory
+   */
+  public Try<T> borrow() {
+    if (closed) {
+      return Try.failure(new IllegalStateException("Pool is closed"));
+    }
+    try {
+      if (!permits.tryAcquire(borrowTimeoutNanos, TimeUnit.NANOSECONDS)) {
+        return Try.failure(new TimeoutException("No free object in the pool of " + maxSize));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return Try.failure(e);
+    }
+    try {
+      evictExpired();
+      for (Entry<T> e = pollIdle(); e != null; e = pollIdle()) {
+        if (isExpired(e) || !validator.test(e.object())) {
+          destroy(e.object());
+        } else {
+          return Try.success(e.object());
+        }
+      }
+      return Try.success(factory.get());
+    } catch (Exception e) {
+      permits.release();
+      return Try.failure(e);
+    }
+  }
+
+  /**
+   * Returns borrowed object to the pool.
+   * @param t object
+   */
+  public void release(T t) {
+    if (closed) {
+      destroy(t);
+    } else {
+      idle.offerFirst(new Entry<>(t, timeSource.nanoTime()));
+      idleCount.incrementAndGet();
+      if (closed) {
+        // pool was closed concurrently
+        evictAll();
+      }
+    }
+    permits.release();
+  }
+
+  /**
+   * Destroys broken borrowed object instead of returning it to the pool.
+   * @param t object
+   */
+  public void invalidate(T t) {
+    destroy(t);
+    permits.release();
+  }
+
+  /**
+   * Borrows object, applies function to it and returns object to the pool.
+   * If function throws, the object is invalidated.
+   * @param <R> result type
+   * @param func function using pooled object
+   * @return function result or failure
+   */
+  public <R> Try<R> withPooled(CheckedFunction<? super T, ? extends R> func) {
+    return borrow().flatMap(t -> {
+      try {
+        R r = func.apply(t);
+        release(t);
+        return Try.success(r);
+      } catch (Exception e) {
+        invalidate(t);
+        return Try.failure(e);
+      } catch (Error e) {
+        invalidate(t);
+        throw e;
+      }
+    });
+  }
+
+  /**
+   * Evicts objects which are idle longer than idle timeout.
+   */
+  public void evictExpired() {
+    for (Entry<T> e = idle.peekLast(); e != null && isExpired(e); e = idle.peekLast()) {
+      if (idle.removeLastOccurrence(e)) {
+        idleCount.decrementAndGet();
+        destroy(e.object());
+      }
+    }
+  }
+
+  /**
+   * Number of idle objects.
+   * @return number of idle objects
+   */
+  public int idle() {
+    return idleCount.get();
+  }
+
+  /**
+   * Number of borrowed objects.
+   * @return number of borrowed objects
+   */
+  public int borrowed() {
+    return maxSize - permits.availablePermits();
+  }
+
+  /**
+   * Closes pool and destroys idle objects, borrowed objects are destroyed when released.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    evictAll();
+  }
+
+  private Entry<T> pollIdle() {
+    Entry<T> e = idle.pollFirst();
+    if (e != null) {
+      idleCount.decrementAndGet();
+    }
+    return e;
+  }
+
+  private void evictAll() {
+    for (Entry<T> e = pollIdle(); e != null; e = pollIdle()) {
+      destroy(e.object());
+    }
+  }
+
+  private boolean isExpired(Entry<T> e) {
+    return timeSource.nanoTime() - e.releasedAt() > idleTimeoutNanos;
+  }
+
+  private void destroy(T t) {
+    Try.of(() -> Fiber.uninterruptibly(() -> destroyer.accept(t)));
+  }
+}
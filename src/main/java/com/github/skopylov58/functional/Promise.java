@@ -0,0 +1,93 @@
+package com.github.skopylov58.functional;
+
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Single assignment variable to pass the result between fibers.
+ *
+ * <p>
+ * Promise is completed once, either with success or with the error, later completions are ignored.
+ * Fibers awaiting the promise are parked (virtual threads are unmounted), waiting is interruptible.
+ *
+ * <pre>
+ *   Promise&lt;String, Integer&gt; p = Promise.make();
+ *   p.await().fork()...
+ *   p.succeed(42)...
+ * </pre>
+ *
+ * @param <E> error type
+ * @param <A> result type
+ */
+public final class Promise<E, A> {
+
+    private final CompletableFuture<Either<E, A>> future = new CompletableFuture<>();
+
+    private Promise() {}
+
+    public static <E, A> Promise<E, A> make() {
+        return new Promise<>();
+    }
+
+    /**
+     * Waits for the promise completion.
+     * @param <R> environment type
+     * @return effect producing the promise's value or error
+     * @throws CancellationException if waiting fiber was interrupted
+     */
+    public <R> ZIO<R, E, A> await() {
+        return new ZIO<>(__ -> Fiber.await(future));
+    }
+
+    public <R, E2> ZIO<R, E2, Boolean> succeed(A a) {
+        return complete(Either.right(a));
+    }
+
+    public <R, E2> ZIO<R, E2, Boolean> fail(E e) {
+        return complete(Either.left(e));
+    }
+
+    /**
+     * Completes the promise.
+     * @param <R> environment type
+     * @param <E2> error type of the effect
+     * @param result result
+     * @return effect producing true if this call has completed the promise, false if it was already completed
+     */
+    public <R, E2> ZIO<R, E2, Boolean> complete(Either<E, A> result) {
+        return new ZIO<>(__ -> Either.right(future.complete(result)));
+    }
+
+    /**
+     * Completes the promise with the result of the effect.
+     * If the effect throws, the promise is completed exceptionally, awaiting fibers get the same exception.
+     * @param <R> environment type
+     * @param effect effect to run
+     * @return effect producing true if this call has completed the promise
+     */
+    public <R> ZIO<R, E, Boolean> completeWith(ZIO<R, E, A> effect) {
+        return new ZIO<>(r -> {
+            Either<E, A> result;
+            try {
+                result = effect.run().apply(r);
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+                throw e;
+            }
+            return Either.right(future.complete(result));
+        });
+    }
+
+    public boolean isDone() {
+        return future.isDone();
+    }
+
+    /**
+     * Result of the promise without waiting.
+     * @return result if promise is completed, empty otherwise
+     */
+    public Optional<Either<E, A>> poll() {
+        return Optional.ofNullable(future.getNow(null));
+    }
+}
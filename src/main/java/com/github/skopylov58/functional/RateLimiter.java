@@ -0,0 +1,212 @@
+package com.github.skopylov58.functional;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.github.skopylov58.functional.Try.CheckedFunction;
+import com.github.skopylov58.functional.Try.CheckedSupplier;
+
+/**
+ * Lock-free token bucket rate limiter.
+ *
+ * <p>
+ * Bucket state is kept in the single {@link AtomicLong} as "theoretical arrival time"
+ * of the next permit (GCRA form of the token bucket), driven by {@link System#nanoTime()}
+ * or by given {@link TimeSource}.
+ * Acquisition is one CAS, rejection when bucket is empty is just a volatile read,
+ * so there is no global lock on the hot path.
+ *
+ * <p>
+ * Three acquisition modes are supported:
+ * <ul>
+ * <li>{@link #tryAcquire()} - non-blocking, decorated calls fail with {@link RejectedExecutionException}</li>
+ * <li>{@link #acquire()} - blocking, parks the thread which is cheap for virtual threads</li>
+ * <li>{@link #acquireAsync()} - asynchronous, returns {@link CompletableFuture}</li>
+ * </ul>
+ *
+ * @author skopylov@gmail.com
+ */
+public class RateLimiter {
+
+  private final long intervalNanos;
+  private final long burstNanos;
+  private final TimeSource timeSource;
+  private final AtomicLong nextFree;
+
+  RateLimiter(long permits, Duration period, long burst, TimeSource timeSource) {
+    if (permits <= 0 || burst <= 0 || period.isNegative() || period.isZero()) {
+      throw new IllegalArgumentException();
+    }
+    this.intervalNanos = Math.max(1, period.toNanos() / permits);
+    try {
+      this.burstNanos = Math.multiplyExact(intervalNanos, burst);
+    } catch (ArithmeticException e) {
+      throw new IllegalArgumentException("Burst is too large for the permit interval", e);
+    }
+    this.timeSource = timeSource;
+    nextFree = new AtomicLong(timeSource.nanoTime() - burstNanos);
+  }
+
+  /**
+   * Creates rate limiter allowing given number of permits per period,
+   * all permits of the period may be acquired at once.
+   * @param permits number of permits per period
+   * @param period period
+   * @return rate limiter
+   */
+  public static RateLimiter of(long permits, Duration period) {
+    return of(permits, period, permits);
+  }
+
+  /**
+   * Creates rate limiter allowing given number of permits per period.
+   * @param permits number of permits per period
+   * @param period period
+   * @param burst bucket capacity, max number of permits that may be acquired at once
+   * @return rate limiter
+   */
+  public static RateLimiter of(long permits, Duration period, long burst) {
+    return of(permits, period, burst, TimeSource.system());
+  }
+
+  /**
+   * Creates rate limiter with given time source.
+   * @param permits number of permits per period
+   * @param period period
+   * @param burst bucket capacity, max number of permits that may be acquired at once
+   * @param timeSource time source
+   * @return rate limiter
+   */
+  public static RateLimiter of(long permits, Duration period, long burst, TimeSource timeSource) {
+    return new RateLimiter(permits, period, burst, timeSource);
+  }
+
+  /**
+   * Tries to acquire permit, never blocks.
+   * @return true if permit was acquired
+   */
+  public boolean tryAcquire() {
+    long now = timeSource.nanoTime();
+    for (;;) {
+      long cur = nextFree.get();
+      long next = take(cur, now);
+      if (next - now > 0) {
+        return false;
+      }
+      if (nextFree.compareAndSet(cur, next)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Reserves permit unconditionally.
+   * @return nanoseconds to wait before reserved permit may be used, 0 if permit is available now
+   */
+  long reserve() {
+    long now = timeSource.nanoTime();
+    for (;;) {
+      long cur = nextFree.get();
+      long next = take(cur, now);
+      if (nextFree.compareAndSet(cur, next)) {
+        return Math.max(0, next - now);
+      }
+    }
+  }
+
+  /**
+   * Takes permit from the bucket, bucket does not hold more than burst permits.
+   * Times are compared by difference like {@link System#nanoTime()} values, so time overflow is safe.
+   * @return next free time after the permit is taken
+   */
+  private long take(long cur, long now) {
+    long full = now - burstNanos;
+    return (cur - full < 0 ? full : cur) + intervalNanos;
+  }
+
+  /**
+   * Acquires permit, waiting if necessary.
+   * Waiting thread is parked, so virtual thread will be unmounted from its carrier.
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void acquire() throws InterruptedException {
+    long wait = reserve();
+    if (wait > 0) {
+      timeSource.sleep(Duration.ofNanos(wait));
+    }
+  }
+
+  /**
+   * Acquires permit asynchronously.
+   * @return future that completes when permit is acquired
+   */
+  public CompletableFuture<Void> acquireAsync() {
+    long wait = reserve();
+    if (wait == 0) {
+      return CompletableFuture.completedFuture(null);
+    }
+    return CompletableFuture.runAsync(() -> {},
+        WheelTimer.shared().delayedExecutor(Duration.ofNanos(wait), ForkJoinPool.commonPool()));
+  }
+
+  /**
+   * Decorates function with non-blocking rate limiting.
+   * @param <T> function input parameter type
+   * @param <R> function result type
+   * @param func function to decorate
+   * @return total function {@code T=>Try<R>}, throttled calls are failures with {@link RejectedExecutionException}
+   */
+  public <T, R> Function<T, Try<R>> decorate(CheckedFunction<T, R> func) {
+    Function<T, Try<R>> catching = Try.catching(func);
+    return t -> tryAcquire() ? catching.apply(t) : Try.failure(new RejectedExecutionException("Rate limit exceeded"));
+  }
+
+  /**
+   * Decorates supplier with non-blocking rate limiting.
+   * @param <T> supplier result type
+   * @param supplier supplier to decorate
+   * @return total supplier {@code ()=>Try<T>}, throttled calls are failures with {@link RejectedExecutionException}
+   */
+  public <T> Supplier<Try<T>> decorate(CheckedSupplier<T> supplier) {
+    Function<Object, Try<T>> func = decorate(o -> supplier.get());
+    return () -> func.apply(null);
+  }
+
+  /**
+   * Decorates function with blocking rate limiting.
+   * @param <T> function input parameter type
+   * @param <R> function result type
+   * @param func function to decorate
+   * @return total function {@code T=>Try<R>}, failure with {@link InterruptedException} if interrupted while waiting
+   */
+  public <T, R> Function<T, Try<R>> decorateBlocking(CheckedFunction<T, R> func) {
+    return t -> Try.of(() -> {
+      try {
+        acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw e;
+      }
+      return func.apply(t);
+    });
+  }
+
+  /**
+   * Decorates function with asynchronous rate limiting.
+   * @param <T> function input parameter type
+   * @param <R> function result type
+   * @param func function to decorate
+   * @return function {@code T=>CompletableFuture<R>}, function is applied when permit is acquired
+   */
+  public <T, R> Function<T, CompletableFuture<R>> decorateAsync(CheckedFunction<T, R> func) {
+    Function<T, Try<R>> catching = Try.catching(func);
+    return t -> acquireAsync().thenCompose(__ -> catching.apply(t).fold(
+        CompletableFuture::completedFuture,
+        CompletableFuture::failedFuture));
+  }
+}
@@ -0,0 +1,96 @@
+package com.github.skopylov58.functional;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Mutable reference for concurrent state of {@link ZIO} effects.
+ *
+ * <p>
+ * Updates are CAS loops on {@link AtomicReference}, no locks or monitors are used, so readers never wait
+ * and fibers on virtual threads are never pinned. Update functions may be called more than once under
+ * contention, so they must be pure.
+ * Effect methods ({@link #get()}, {@link #update(UnaryOperator)}, {@link #modify(Function)}...) return
+ * lazy {@link ZIO} effects, {@code unsafe*} methods do the same immediately and may be used from {@link IO}
+ * like {@code IO.of(() -> ref.unsafeUpdateAndGet(f))}.
+ *
+ * @param <A> value type
+ */
+public final class Ref<A> {
+
+    private final AtomicReference<A> value;
+
+    private Ref(A initial) {
+        value = new AtomicReference<>(initial);
+    }
+
+    public static <A> Ref<A> of(A initial) {
+        return new Ref<>(initial);
+    }
+
+    public <R,E> ZIO<R,E,A> get() {
+        return new ZIO<>(__ -> Either.right(value.get()));
+    }
+
+    public <R,E> ZIO<R,E,Void> set(A a) {
+        return new ZIO<>(__ -> {
+            value.set(a);
+            return Either.right(null);
+        });
+    }
+
+    public <R,E> ZIO<R,E,Void> update(UnaryOperator<A> f) {
+        return new ZIO<>(__ -> {
+            unsafeUpdateAndGet(f);
+            return Either.right(null);
+        });
+    }
+
+    public <R,E> ZIO<R,E,A> updateAndGet(UnaryOperator<A> f) {
+        return new ZIO<>(__ -> Either.right(unsafeUpdateAndGet(f)));
+    }
+
+    /**
+     * Atomically modifies the reference and computes the result.
+     * @param <R> environment type
+     * @param <E> error type
+     * @param <B> result type
+     * @param f function of the current value to the tuple of result (first) and new value (second)
+     * @return effect producing the result
+     */
+    public <R,E,B> ZIO<R,E,B> modify(Function<? super A, Tuple<B,A>> f) {
+        return new ZIO<>(__ -> Either.right(unsafeModify(f)));
+    }
+
+    public A unsafeGet() {
+        return value.get();
+    }
+
+    public A unsafeUpdateAndGet(UnaryOperator<A> f) {
+        for (;;) {
+            A cur = value.get();
+            A next = f.apply(cur);
+            if (value.compareAndSet(cur, next)) {
+                return next;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    public <B> B unsafeModify(Function<? super A, Tuple<B,A>> f) {
+        for (;;) {
+            A cur = value.get();
+            Tuple<B,A> res = f.apply(cur);
+            if (value.compareAndSet(cur, res.second)) {
+                return res.first;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Ref(" + value.get() + ")";
+    }
+}
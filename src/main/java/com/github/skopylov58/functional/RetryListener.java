@@ -0,0 +1,101 @@
+package com.github.skopylov58.functional;
+
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Listener of retry events.
+ *
+ * <p>
+ * All methods have empty default implementations, so listener may override only events it is interested in.
+ * Listener is called on the retrying thread, it should be cheap and should not throw exceptions.
+ *
+ * @author skopylov@gmail.com
+ */
+public interface RetryListener {
+
+  /**
+   * Called before each attempt.
+   * @param attempt attempt number, starting from 0
+   */
+  default void onAttemptStart(long attempt) {}
+
+  /**
+   * Called when attempt fails.
+   * @param attempt attempt number, starting from 0
+   * @param failure exception thrown by attempt or {@link java.util.NoSuchElementException}
+   * if attempt result was not accepted as success
+   */
+  default void onAttemptFailure(long attempt, Exception failure) {}
+
+  /**
+   * Called when retry succeeds.
+   * @param attempts number of attempts made including successful one
+   */
+  default void onSuccess(long attempts) {}
+
+  /**
+   * Called when retry gives up because of retry limit or interruption.
+   * @param attempts number of attempts made
+   * @param lastFailure last failure, null if no attempt was made
+   */
+  default void onGiveUp(long attempts, Exception lastFailure) {}
+
+  /**
+   * Listener that does nothing, default for retry functions.
+   * @return no-op listener
+   */
+  static RetryListener noop() {
+    return NOOP;
+  }
+
+  static final RetryListener NOOP = new RetryListener() {};
+
+  /**
+   * Listener that logs failures and give-ups but not more than one message per given interval.
+   * Only exception's string representation is logged, stack traces are not captured.
+   * Number of suppressed messages is reported with the next logged message.
+   * @param logger logger
+   * @param interval min interval between log messages
+   * @return rate-limited logging listener
+   */
+  static RetryListener logging(Logger logger, Duration interval) {
+    RateLimiter limiter = RateLimiter.of(1, interval);
+    AtomicLong suppressed = new AtomicLong();
+
+    return new RetryListener() {
+      @Override
+      public void onAttemptFailure(long attempt, Exception failure) {
+        log(Level.INFO, "Attempt " + attempt + " failed: ", failure);
+      }
+
+      @Override
+      public void onGiveUp(long attempts, Exception lastFailure) {
+        log(Level.WARNING, "Gave up after " + attempts + " attempts: ", lastFailure);
+      }
+
+      private void log(Level level, String msg, Exception e) {
+        if (!logger.isLoggable(level)) {
+          return;
+        }
+        if (limiter.tryAcquire()) {
+          long s = suppressed.getAndSet(0);
+          logger.log(level, msg + e + (s == 0 ? "" : " (" + s + " messages suppressed)"));
+        } else {
+          suppressed.incrementAndGet();
+        }
+      }
+    };
+  }
+
+  /**
+   * Rate-limited logging listener using {@link FPUtils} logger.
+   * @param interval min interval between log messages
+   * @return rate-limited logging listener
+   */
+  static RetryListener logging(Duration interval) {
+    return logging(System.getLogger(FPUtils.class.getName()), interval);
+  }
+}
@@ -0,0 +1,53 @@
+package com.github.skopylov58.functional;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Result of the retry with history of attempts.
+ *
+ * @param <V> result type
+ * @param value result value, null if retry was not successful
+ * @param success true if retry was successful
+ * @param attempts history of attempts in order they were made
+ *
+ * @author skopylov@gmail.com
+ */
+public record RetryResult<V>(V value, boolean success, List<Attempt> attempts) {
+
+  /**
+   * Single attempt of retry.
+   * @param number attempt number, starting from 0
+   * @param delay delay before this attempt
+   * @param duration attempt duration
+   * @param failure attempt failure, null for successful attempt
+   */
+  public record Attempt(long number, Duration delay, Duration duration, Exception failure) {
+    public boolean isFailure() {
+      return failure != null;
+    }
+  }
+
+  /**
+   * Converts result to Optional.
+   * @return Optional of value if successful, empty otherwise
+   */
+  public Optional<V> optional() {
+    return success ? Optional.ofNullable(value) : Optional.empty();
+  }
+
+  /**
+   * Gets last failure.
+   * @return exception of the last failed attempt
+   */
+  public Optional<Exception> lastFailure() {
+    for (int i = attempts.size() - 1; i >= 0; i--) {
+      Attempt a = attempts.get(i);
+      if (a.isFailure()) {
+        return Optional.of(a.failure());
+      }
+    }
+    return Optional.empty();
+  }
+}
@@ -0,0 +1,79 @@
+package com.github.skopylov58.functional;
+
+import java.util.Arrays;
+
+/**
+ * Iterative interpreter of map/flatMap chains, shared by {@link IO}, {@link State}, {@link IntState}
+ * and {@link LongState}.
+ *
+ * <p>
+ * Interpreter walks down the chain pushing steps to the heap allocated stack, runs the leaf effect,
+ * then applies continuations to its value, so chains of any length run in constant Java stack.
+ * Subclass defines how the leaf is run, state monads use their state cell as the run loop.
+ * Stack is allocated on the first push and kept for the next runs, so running the chain again on the same
+ * cell allocates nothing.
+ */
+abstract class RunLoop {
+
+  /** Larger stacks are not kept after the run */
+  private static final int MAX_KEPT_STACK = 256;
+
+  /** Stack of the previous run, is taken by the running loop, so nested runs get their own stack */
+  private Step[] stack;
+
+  /**
+   * Map or flatMap node of the chain.
+   */
+  interface Step {
+
+    Object source();
+
+    /**
+     * @return true if continuation gives the next chain to run, false if it maps the value
+     */
+    boolean flat();
+
+    Object next(Object value);
+  }
+
+  /**
+   * Runs the leaf of the chain.
+   * @param leaf node which is not a {@link Step}
+   * @return leaf value
+   */
+  abstract Object leaf(Object leaf);
+
+  final Object run(Object chain) {
+    Step[] stack = this.stack;
+    this.stack = null;
+    int sp = 0;
+    Object cur = chain;
+    for (;;) {
+      while (cur instanceof Step step) {
+        if (stack == null) {
+          stack = new Step[8];
+        } else if (sp == stack.length) {
+          stack = Arrays.copyOf(stack, sp * 2);
+        }
+        stack[sp++] = step;
+        cur = step.source();
+      }
+      Object value = leaf(cur);
+      for (;;) {
+        if (sp == 0) {
+          if (stack != null && stack.length <= MAX_KEPT_STACK) {
+            this.stack = stack;
+          }
+          return value;
+        }
+        Step k = stack[--sp];
+        stack[sp] = null;
+        if (k.flat()) {
+          cur = k.next(value);
+          break;
+        }
+        value = k.next(value);
+      }
+    }
+  }
+}
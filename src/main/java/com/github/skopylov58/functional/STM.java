@@ -0,0 +1,268 @@
+package com.github.skopylov58.functional;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Software transactional memory, atomic composable updates of several {@link TRef}s.
+ *
+ * <p>
+ * Transactions are optimistic (TL2 algorithm): transaction remembers global version clock at start,
+ * each read checks that the reference was not committed after that, writes are buffered.
+ * Commit locks written references in the order of their ids, increments the clock, validates the read set,
+ * publishes writes with the new version and unlocks references. Conflicting transaction is restarted,
+ * so transaction body must not have side effects. Read only transactions never lock and never write shared memory.
+ *
+ * <p>
+ * {@link #retry()} blocks the transaction till one of references it has read is changed by another commit,
+ * waiting fibers are parked, waiting is interruptible. {@link #orElse(STM)} runs alternative
+ * transaction if this one retries.
+ *
+ * <pre>
+ *   STM&lt;Void&gt; transfer = from.get()
+ *       .flatMap(balance -&gt; STM.check(balance &gt;= amount))
+ *       .flatMap(__ -&gt; from.update(b -&gt; b - amount))
+ *       .flatMap(__ -&gt; to.update(b -&gt; b + amount))
+ *       .map(__ -&gt; null);
+ *   transfer.commit().run()...
+ * </pre>
+ *
+ * @param <A> result type
+ */
+public final class STM<A> {
+
+    private static final AtomicLong CLOCK = new AtomicLong();
+
+    private final Function<Txn, A> body;
+
+    STM(Function<Txn, A> body) {
+        this.body = body;
+    }
+
+    public static <A> STM<A> succeed(A a) {
+        return new STM<>(__ -> a);
+    }
+
+    /**
+     * Aborts the transaction and runs it again when one of references it has read is changed.
+     * @param <A> result type
+     * @return transaction that retries
+     */
+    public static <A> STM<A> retry() {
+        return new STM<>(__ -> {
+            throw Retry.INSTANCE;
+        });
+    }
+
+    /**
+     * Retries the transaction if condition is false.
+     * @param condition condition
+     * @return transaction
+     */
+    public static STM<Void> check(boolean condition) {
+        return condition ? succeed(null) : retry();
+    }
+
+    public <B> STM<B> map(Function<? super A, ? extends B> mapper) {
+        return new STM<>(txn -> mapper.apply(body.apply(txn)));
+    }
+
+    public <B> STM<B> flatMap(Function<? super A, STM<B>> mapper) {
+        return new STM<>(txn -> mapper.apply(body.apply(txn)).body.apply(txn));
+    }
+
+    /**
+     * Runs that transaction if this one retries, writes of this transaction are discarded.
+     * @param that alternative transaction
+     * @return transaction
+     */
+    public STM<A> orElse(STM<A> that) {
+        return new STM<>(txn -> {
+            Map<TRef<?>, Object> saved = new HashMap<>(txn.writes);
+            try {
+                return body.apply(txn);
+            } catch (Retry e) {
+                txn.writes = saved;
+                return that.body.apply(txn);
+            }
+        });
+    }
+
+    /**
+     * Commits the transaction as effect.
+     * @param <R> environment type
+     * @param <E> error type
+     * @return effect producing transaction result
+     * @throws CancellationException if fiber was interrupted while waiting on {@link #retry()}
+     */
+    public <R, E> ZIO<R, E, A> commit() {
+        return new ZIO<>(__ -> Either.right(unsafeCommit()));
+    }
+
+    /**
+     * Commits the transaction immediately, may be used from {@link IO}.
+     * @return transaction result
+     * @throws CancellationException if current thread was interrupted while waiting on {@link #retry()}
+     */
+    public A unsafeCommit() {
+        for (int attempt = 0; ; attempt++) {
+            Txn txn = new Txn();
+            try {
+                A a = body.apply(txn);
+                if (txn.commit()) {
+                    return a;
+                }
+            } catch (Conflict e) {
+                // restart
+            } catch (Retry e) {
+                txn.await();
+                attempt = 0;
+                continue;
+            }
+            backoff(attempt);
+        }
+    }
+
+    private static void backoff(int attempt) {
+        if (attempt < 8) {
+            Thread.onSpinWait();
+        } else {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Transaction log.
+     */
+    static final class Txn {
+        final long readVersion = CLOCK.get();
+        final Map<TRef<?>, Long> reads = new HashMap<>();
+        Map<TRef<?>, Object> writes = new HashMap<>();
+
+        Object read(TRef<?> ref) {
+            if (writes.containsKey(ref)) {
+                return writes.get(ref);
+            }
+            long w1 = ref.word.get();
+            Object value = ref.value;
+            long w2 = ref.word.get();
+            if (w1 != w2 || (w1 & 1) != 0 || (w1 >>> 1) > readVersion) {
+                throw Conflict.INSTANCE;
+            }
+            reads.putIfAbsent(ref, w1);
+            return value;
+        }
+
+        void write(TRef<?> ref, Object value) {
+            writes.put(ref, value);
+        }
+
+        boolean commit() {
+            if (writes.isEmpty()) {
+                // every read was validated against read version
+                return true;
+            }
+            List<TRef<?>> locked = new ArrayList<>(writes.keySet());
+            locked.sort(Comparator.comparingLong(r -> r.id));
+            int count = 0;
+            try {
+                for (TRef<?> ref : locked) {
+                    if (!lock(ref)) {
+                        return false;
+                    }
+                    count++;
+                }
+                long writeVersion = CLOCK.incrementAndGet();
+                if (writeVersion != readVersion + 1 && !validate()) {
+                    return false;
+                }
+                for (TRef<?> ref : locked) {
+                    ref.value = writes.get(ref);
+                    ref.word.set(writeVersion << 1);
+                }
+                count = 0;
+            } finally {
+                for (int i = 0; i < count; i++) {
+                    TRef<?> ref = locked.get(i);
+                    ref.word.set(ref.word.get() & ~1L);
+                }
+            }
+            for (TRef<?> ref : locked) {
+                ref.waiters.forEach(LockSupport::unpark);
+            }
+            return true;
+        }
+
+        private boolean lock(TRef<?> ref) {
+            for (int spin = 0; spin < 64; spin++) {
+                long w = ref.word.get();
+                if ((w & 1) == 0) {
+                    if ((w >>> 1) > readVersion && reads.containsKey(ref)) {
+                        return false;
+                    }
+                    if (ref.word.compareAndSet(w, w | 1)) {
+                        return true;
+                    }
+                }
+                Thread.onSpinWait();
+            }
+            return false;
+        }
+
+        private boolean validate() {
+            for (var e : reads.entrySet()) {
+                TRef<?> ref = e.getKey();
+                long w = ref.word.get();
+                boolean lockedByUs = writes.containsKey(ref);
+                if (((w & 1) != 0 && !lockedByUs) || (w >>> 1) > readVersion) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void await() {
+            Thread me = Thread.currentThread();
+            reads.keySet().forEach(ref -> ref.waiters.add(me));
+            try {
+                if (unchanged()) {
+                    LockSupport.park(this);
+                }
+            } finally {
+                reads.keySet().forEach(ref -> ref.waiters.remove(me));
+            }
+            if (me.isInterrupted()) {
+                throw new CancellationException("Interrupted");
+            }
+        }
+
+        private boolean unchanged() {
+            return reads.entrySet().stream().allMatch(e -> e.getKey().word.get() == e.getValue());
+        }
+    }
+
+    private static final class Conflict extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        static final Conflict INSTANCE = new Conflict();
+
+        private Conflict() {
+            super("STM conflict", null, false, false);
+        }
+    }
+
+    private static final class Retry extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        static final Retry INSTANCE = new Retry();
+
+        private Retry() {
+            super("STM retry", null, false, false);
+        }
+    }
+}
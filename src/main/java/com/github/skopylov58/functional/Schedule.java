@@ -0,0 +1,222 @@
+package com.github.skopylov58.functional;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Composable schedule for {@link ZIO#retry(Schedule)} and {@link ZIO#repeat(Schedule)}.
+ *
+ * <p>
+ * Schedule is immutable description, each retry/repeat run gets its own {@link Driver}
+ * which tells delay before the next recurrence or stops recurrences.
+ *
+ * <pre>
+ *   Schedule schedule = Schedule.exponential(Duration.ofMillis(10), 2).jittered()
+ *           .upTo(Duration.ofSeconds(5))
+ *           .intersect(Schedule.recurs(10));
+ *   ZIO&lt;R,E,A&gt; reliable = effect.retry(schedule);
+ * </pre>
+ *
+ * @author skopylov@gmail.com
+ */
+@FunctionalInterface
+public interface Schedule {
+
+    /**
+     * Creates new driver for the single retry/repeat run.
+     * @param timeSource time source to measure elapsed time
+     * @return driver
+     */
+    Driver driver(TimeSource timeSource);
+
+    /**
+     * Stateful driver of the schedule.
+     */
+    @FunctionalInterface
+    interface Driver {
+        /**
+         * Called after each execution of the effect.
+         * @return delay before next recurrence or empty to stop
+         */
+        Optional<Duration> next();
+    }
+
+    /**
+     * Recurs given number of times without delay.
+     * @param n number of recurrences
+     * @return schedule
+     */
+    static Schedule recurs(long n) {
+        return ts -> {
+            long[] count = {0};
+            return () -> count[0]++ < n ? Optional.of(Duration.ZERO) : Optional.empty();
+        };
+    }
+
+    /**
+     * Recurs forever with fixed delay.
+     * @param delay delay between recurrences
+     * @return schedule
+     */
+    static Schedule spaced(Duration delay) {
+        return ts -> () -> Optional.of(delay);
+    }
+
+    /**
+     * Recurs forever with exponentially growing delay, base * factor^n.
+     * @param base first delay
+     * @param factor growth factor
+     * @return schedule
+     */
+    static Schedule exponential(Duration base, double factor) {
+        return ts -> {
+            long[] count = {0};
+            return () -> {
+                double nanos = base.toNanos() * Math.pow(factor, count[0]++);
+                return Optional.of(Duration.ofNanos((long) Math.min(nanos, Long.MAX_VALUE)));
+            };
+        };
+    }
+
+    /**
+     * Randomizes delays of this schedule in [0.5, 1.5) range of the delay.
+     * @return jittered schedule
+     */
+    default Schedule jittered() {
+        return jittered(0.5, 1.5);
+    }
+
+    /**
+     * Randomizes delays of this schedule.
+     * @param min min factor of the delay
+     * @param max max factor of the delay
+     * @return jittered schedule
+     */
+    default Schedule jittered(double min, double max) {
+        if (min < 0 || max < min) {
+            throw new IllegalArgumentException();
+        }
+        return ts -> {
+            Driver d = driver(ts);
+            return () -> d.next().map(delay -> {
+                double factor = min == max ? min : ThreadLocalRandom.current().nextDouble(min, max);
+                return Duration.ofNanos((long) (delay.toNanos() * factor));
+            });
+        };
+    }
+
+    /**
+     * Stops this schedule when given time has elapsed since the start of retry/repeat run.
+     * @param duration max duration of the run
+     * @return schedule
+     */
+    default Schedule upTo(Duration duration) {
+        return ts -> {
+            Driver d = driver(ts);
+            long start = ts.nanoTime();
+            return () -> ts.nanoTime() - start < duration.toNanos() ? d.next() : Optional.empty();
+        };
+    }
+
+    /**
+     * Runs this schedule, then that schedule when this one is done.
+     * @param that schedule to run after this one
+     * @return sequential schedule
+     */
+    default Schedule andThen(Schedule that) {
+        return ts -> {
+            Driver first = driver(ts);
+            Driver[] second = {null};
+            return () -> {
+                if (second[0] == null) {
+                    Optional<Duration> next = first.next();
+                    if (next.isPresent()) {
+                        return next;
+                    }
+                    second[0] = that.driver(ts);
+                }
+                return second[0].next();
+            };
+        };
+    }
+
+    /**
+     * Recurs while any of schedules recurs, using the shorter delay.
+     * @param that other schedule
+     * @return union schedule
+     */
+    default Schedule union(Schedule that) {
+        return ts -> {
+            Driver a = driver(ts);
+            Driver b = that.driver(ts);
+            return () -> {
+                Optional<Duration> da = a.next();
+                Optional<Duration> db = b.next();
+                if (da.isEmpty()) {
+                    return db;
+                }
+                return db.isEmpty() || da.get().compareTo(db.get()) <= 0 ? da : db;
+            };
+        };
+    }
+
+    /**
+     * Recurs while both schedules recur, using the longer delay.
+     * @param that other schedule
+     * @return intersection schedule
+     */
+    default Schedule intersect(Schedule that) {
+        return ts -> {
+            Driver a = driver(ts);
+            Driver b = that.driver(ts);
+            return () -> {
+                Optional<Duration> da = a.next();
+                Optional<Duration> db = b.next();
+                if (da.isEmpty() || db.isEmpty()) {
+                    return Optional.empty();
+                }
+                return da.get().compareTo(db.get()) >= 0 ? da : db;
+            };
+        };
+    }
+
+    /**
+     * Waits for the delay, the calling thread is parked until the delay expires.
+     * With system time source the wake up is scheduled on the shared {@link WheelTimer}, a virtual thread
+     * unmounts from its carrier while parked, a platform thread stays blocked.
+     * Other time sources (like virtual time) just sleep.
+     * @param delay delay
+     * @param timeSource time source
+     * @throws java.util.concurrent.CancellationException if current thread was interrupted
+     */
+    static void delay(Duration delay, TimeSource timeSource) {
+        if (delay.isZero() || delay.isNegative()) {
+            Fiber.checkInterrupted();
+            return;
+        }
+        try {
+            if (timeSource == TimeSource.system()) {
+                CompletableFuture<Void> done = new CompletableFuture<>();
+                ScheduledFuture<?> timeout = WheelTimer.shared().schedule(() -> done.complete(null),
+                        delay.toNanos(), TimeUnit.NANOSECONDS);
+                try {
+                    done.get();
+                } finally {
+                    timeout.cancel(false);
+                }
+            } else {
+                timeSource.sleep(delay);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Fiber.cancellation(e);
+        } catch (ExecutionException e) {
+            // can not happen, future is never completed exceptionally
+        }
+    }
+}
@@ -1,11 +1,25 @@
 package com.github.skopylov58.functional;
 
 
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * State monad.
- * 
+ *
+ * <p>
+ * {@link #map(Function)} and {@link #flatMap(Function)} do not nest closures, they build
+ * map and flatMap nodes, which are run by iterative interpreter with heap allocated
+ * continuation stack, so state machines of millions of steps run in constant Java stack.
+ * Interpreter keeps the state in the {@link Cell}, so {@link #get()}, {@link #put(Object)},
+ * {@link #modify(UnaryOperator)} and {@link #pure(Object)} steps allocate no tuples, tuple is created
+ * only by {@link #apply(Object)} at the end of the run and by user lambdas implementing {@code apply}.
+ *
  * @param <T> value type
  * @param <S> state type
  */
@@ -27,21 +41,169 @@ public interface State<T, S> {
    * @return state monad
    */
   static <T, S> State<T, S> pure(T t) {
-    return s -> new Tuple<>(t, s);
+    return new StateSteps.Pure<>(t);
+  }
+
+  /**
+   * Gets the current state as the value.
+   * @param <S> state type
+   * @return state monad
+   */
+  static <S> State<S, S> get() {
+    return new StateSteps.Gets<>(Function.identity());
+  }
+
+  static <T, S> State<T, S> gets(Function<? super S, ? extends T> f) {
+    return new StateSteps.Gets<>(f);
+  }
+
+  /**
+   * Replaces the state.
+   * @param <S> state type
+   * @param s new state
+   * @return state monad
+   */
+  static <S> State<Void, S> put(S s) {
+    return new StateSteps.Modify<>(__ -> s);
+  }
+
+  static <S> State<Void, S> modify(UnaryOperator<S> f) {
+    return new StateSteps.Modify<>(f);
   }
 
   default <R> State<R, S> map(Function<? super T, ? extends R> mapper) {
-    return state -> {
-      Tuple<T, S> tuple = apply(state);
-      return new Tuple<>(mapper.apply(tuple.first), tuple.second);
-    };
+    return new StateSteps.Mapped<>(this, mapper);
   }
 
   default <R> State<R, S> flatMap(Function<? super T, State<R, S>> mapper) {
-    return state -> {
-      Tuple<T, S> tuple = apply(state);
-      return mapper.apply(tuple.first).apply(tuple.second);
+    return new StateSteps.FlatMapped<>(this, mapper);
+  }
+
+  /**
+   * Runs the state monad threading the state through the mutable cell.
+   * Initial state is taken from the cell, final state is left in the cell, cell may be reused for the next run.
+   * @param cell state cell
+   * @return value
+   */
+  @SuppressWarnings("unchecked")
+  default T run(Cell<S> cell) {
+    return (T) cell.run(this);
+  }
+
+  /**
+   * Runs the state monad and returns the value.
+   * @param state initial state
+   * @return value
+   */
+  default T eval(S state) {
+    return run(new Cell<>(state));
+  }
+
+  /**
+   * Runs the state monad and returns the final state.
+   * @param state initial state
+   * @return final state
+   */
+  default S exec(S state) {
+    Cell<S> cell = new Cell<>(state);
+    run(cell);
+    return cell.value;
+  }
+
+  /**
+   * Runs state step for each input element, emitting step values lazily.
+   * State is threaded from step to step through the single {@link Cell}, elements are pulled from the input
+   * one by one as results are consumed, so memory use does not depend on the input size and input may be unbounded.
+   * @param <T> input element type
+   * @param <R> result type
+   * @param <S> state type
+   * @param input input elements
+   * @param initial initial state
+   * @param step state step for the element
+   * @return lazy sequential stream of step results, closing it closes the input
+   */
+  static <T, R, S> Stream<R> scanState(Stream<T> input, S initial, Function<? super T, ? extends State<R, S>> step) {
+    Iterator<R> iter = scanState(input.iterator(), initial, step);
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iter, Spliterator.ORDERED), false)
+        .onClose(input::close);
+  }
+
+  static <T, R, S> Iterator<R> scanState(Iterator<T> input, S initial, Function<? super T, ? extends State<R, S>> step) {
+    Cell<S> cell = new Cell<>(initial);
+    return new Iterator<R>() {
+      @Override
+      public boolean hasNext() {
+        return input.hasNext();
+      }
+
+      @Override
+      public R next() {
+        return step.apply(input.next()).run(cell);
+      }
     };
   }
 
+  /**
+   * Runs state step for each input element and returns the final state.
+   * @param <T> input element type
+   * @param <S> state type
+   * @param input input elements
+   * @param initial initial state
+   * @param step state step for the element
+   * @return final state
+   */
+  static <T, S> S foldState(Stream<T> input, S initial, Function<? super T, ? extends State<?, S>> step) {
+    try (input) {
+      return foldState(input.iterator(), initial, step);
+    }
+  }
+
+  static <T, S> S foldState(Iterator<T> input, S initial, Function<? super T, ? extends State<?, S>> step) {
+    Cell<S> cell = new Cell<>(initial);
+    while (input.hasNext()) {
+      step.apply(input.next()).run(cell);
+    }
+    return cell.value;
+  }
+
+  /**
+   * Mutable holder of the state, runs chains of steps.
+   * @param <S> state type
+   */
+  final class Cell<S> extends RunLoop {
+    S value;
+
+    public Cell(S value) {
+      this.value = value;
+    }
+
+    public S get() {
+      return value;
+    }
+
+    public void set(S value) {
+      this.value = value;
+    }
+
+    /**
+     * Runs the leaf step, pure, gets and modify steps are run on the cell without tuples.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    @Override
+    Object leaf(Object leaf) {
+      if (leaf instanceof StateSteps.Pure p) {
+        return p.value();
+      }
+      if (leaf instanceof StateSteps.Gets g) {
+        return g.f().apply(value);
+      }
+      if (leaf instanceof StateSteps.Modify m) {
+        value = (S) m.f().apply(value);
+        return null;
+      }
+      Tuple<?, S> tuple = ((State<?, S>) leaf).apply(value);
+      value = tuple.second;
+      return tuple.first;
+    }
+  }
 }
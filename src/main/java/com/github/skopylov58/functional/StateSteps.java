@@ -0,0 +1,157 @@
+package com.github.skopylov58.functional;
+
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Nodes of the state monads, map and flatMap nodes are run by the {@link RunLoop} of the state cell.
+ */
+final class StateSteps {
+
+  private StateSteps() {}
+
+  record Pure<T, S>(T value) implements State<T, S> {
+    @Override
+    public Tuple<T, S> apply(S state) {
+      return new Tuple<>(value, state);
+    }
+  }
+
+  record Gets<T, S>(Function<? super S, ? extends T> f) implements State<T, S> {
+    @Override
+    public Tuple<T, S> apply(S state) {
+      return new Tuple<>(f.apply(state), state);
+    }
+  }
+
+  record Modify<S>(UnaryOperator<S> f) implements State<Void, S> {
+    @Override
+    public Tuple<Void, S> apply(S state) {
+      return new Tuple<>(null, f.apply(state));
+    }
+  }
+
+  record Mapped<U, T, S>(State<U, S> source, Function<? super U, ? extends T> mapper)
+      implements State<T, S>, RunLoop.Step {
+    @Override
+    public Tuple<T, S> apply(S state) {
+      return applyLoop(this, state);
+    }
+
+    @Override
+    public boolean flat() {
+      return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object next(Object value) {
+      return mapper.apply((U) value);
+    }
+  }
+
+  record FlatMapped<U, T, S>(State<U, S> source, Function<? super U, State<T, S>> mapper)
+      implements State<T, S>, RunLoop.Step {
+    @Override
+    public Tuple<T, S> apply(S state) {
+      return applyLoop(this, state);
+    }
+
+    @Override
+    public boolean flat() {
+      return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object next(Object value) {
+      return mapper.apply((U) value);
+    }
+  }
+
+  private static <T, S> Tuple<T, S> applyLoop(State<T, S> state, S s) {
+    State.Cell<S> cell = new State.Cell<>(s);
+    T t = state.run(cell);
+    return new Tuple<>(t, cell.value);
+  }
+
+  record IntMapped<S, T>(IntState<S> source, Function<? super S, ? extends T> mapper)
+      implements IntState<T>, RunLoop.Step {
+    @SuppressWarnings("unchecked")
+    @Override
+    public T run(IntState.Cell cell) {
+      return (T) cell.run(this);
+    }
+
+    @Override
+    public boolean flat() {
+      return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object next(Object value) {
+      return mapper.apply((S) value);
+    }
+  }
+
+  record IntFlatMapped<S, T>(IntState<S> source, Function<? super S, IntState<T>> mapper)
+      implements IntState<T>, RunLoop.Step {
+    @SuppressWarnings("unchecked")
+    @Override
+    public T run(IntState.Cell cell) {
+      return (T) cell.run(this);
+    }
+
+    @Override
+    public boolean flat() {
+      return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object next(Object value) {
+      return mapper.apply((S) value);
+    }
+  }
+
+  record LongMapped<S, T>(LongState<S> source, Function<? super S, ? extends T> mapper)
+      implements LongState<T>, RunLoop.Step {
+    @SuppressWarnings("unchecked")
+    @Override
+    public T run(LongState.Cell cell) {
+      return (T) cell.run(this);
+    }
+
+    @Override
+    public boolean flat() {
+      return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object next(Object value) {
+      return mapper.apply((S) value);
+    }
+  }
+
+  record LongFlatMapped<S, T>(LongState<S> source, Function<? super S, LongState<T>> mapper)
+      implements LongState<T>, RunLoop.Step {
+    @SuppressWarnings("unchecked")
+    @Override
+    public T run(LongState.Cell cell) {
+      return (T) cell.run(this);
+    }
+
+    @Override
+    public boolean flat() {
+      return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object next(Object value) {
+      return mapper.apply((S) value);
+    }
+  }
+}
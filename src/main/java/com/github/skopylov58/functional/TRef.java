@@ -0,0 +1,73 @@
+package com.github.skopylov58.functional;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Transactional reference, is read and written by {@link STM} transactions.
+ *
+ * <p>
+ * Reference has versioned write lock, the word keeps version of the last commit
+ * shifted left by one and the lock bit, see {@link STM} for the commit protocol.
+ *
+ * @param <A> value type
+ */
+public final class TRef<A> {
+
+    private static final AtomicLong IDS = new AtomicLong();
+
+    final long id = IDS.incrementAndGet();
+    final AtomicLong word = new AtomicLong();
+    final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<>();
+    volatile Object value;
+
+    private TRef(A initial) {
+        value = initial;
+    }
+
+    public static <A> TRef<A> make(A initial) {
+        return new TRef<>(initial);
+    }
+
+    @SuppressWarnings("unchecked")
+    public STM<A> get() {
+        return new STM<>(txn -> (A) txn.read(this));
+    }
+
+    public STM<Void> set(A a) {
+        return new STM<>(txn -> {
+            txn.write(this, a);
+            return null;
+        });
+    }
+
+    public STM<A> update(UnaryOperator<A> f) {
+        return get().map(f).flatMap(a -> set(a).map(__ -> a));
+    }
+
+    /**
+     * Modifies the reference and computes the result.
+     * @param <B> result type
+     * @param f function of the current value to the tuple of result (first) and new value (second)
+     * @return transaction producing the result
+     */
+    public <B> STM<B> modify(Function<? super A, Tuple<B, A>> f) {
+        return get().map(f).flatMap(t -> set(t.second).map(__ -> t.first));
+    }
+
+    /**
+     * Current committed value, read outside of any transaction.
+     * @return value
+     */
+    @SuppressWarnings("unchecked")
+    public A unsafeGet() {
+        return (A) value;
+    }
+
+    @Override
+    public String toString() {
+        return "TRef(" + value + ")";
+    }
+}
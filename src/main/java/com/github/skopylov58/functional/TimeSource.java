@@ -0,0 +1,108 @@
+package com.github.skopylov58.functional;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Source of time for time-dependent functions like retry and rate limiting.
+ *
+ * <p>
+ * {@link #system()} uses {@link System#nanoTime()} and real sleeping,
+ * {@link #virtual()} gives deterministic virtual time for testing, where sleeping
+ * just advances the clock, so hours of backoff run in microseconds.
+ *
+ * @author skopylov@gmail.com
+ */
+public interface TimeSource {
+
+  /**
+   * Current time in nanoseconds, has the same semantics as {@link System#nanoTime()}
+   * @return current time in nanoseconds
+   */
+  long nanoTime();
+
+  /**
+   * Sleeps given duration.
+   * @param duration duration to sleep
+   * @throws InterruptedException if current thread was interrupted
+   */
+  void sleep(Duration duration) throws InterruptedException;
+
+  /**
+   * System time source.
+   * @return time source using system timer and real sleeping
+   */
+  static TimeSource system() {
+    return SYSTEM;
+  }
+
+  static final TimeSource SYSTEM = new TimeSource() {
+    @Override
+    public long nanoTime() {
+      return System.nanoTime();
+    }
+
+    @Override
+    public void sleep(Duration duration) throws InterruptedException {
+      TimeUnit.NANOSECONDS.sleep(duration.toNanos());
+    }
+  };
+
+  /**
+   * Creates new virtual time source starting from zero.
+   * @return virtual time source
+   */
+  static Virtual virtual() {
+    return new Virtual();
+  }
+
+  /**
+   * Virtual time source, sleeping advances virtual time and returns immediately.
+   */
+  class Virtual implements TimeSource {
+
+    private final AtomicLong now = new AtomicLong();
+    private final AtomicLong sleeps = new AtomicLong();
+
+    Virtual() {}
+
+    @Override
+    public long nanoTime() {
+      return now.get();
+    }
+
+    @Override
+    public void sleep(Duration duration) throws InterruptedException {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      sleeps.incrementAndGet();
+      advance(duration);
+    }
+
+    /**
+     * Advances virtual time.
+     * @param duration time to add
+     */
+    public void advance(Duration duration) {
+      now.addAndGet(duration.toNanos());
+    }
+
+    /**
+     * Virtual time elapsed since creation.
+     * @return elapsed virtual time
+     */
+    public Duration elapsed() {
+      return Duration.ofNanos(now.get());
+    }
+
+    /**
+     * Number of sleeps happened.
+     * @return number of {@link #sleep(Duration)} calls
+     */
+    public long sleeps() {
+      return sleeps.get();
+    }
+  }
+}
@@ -0,0 +1,267 @@
+package com.github.skopylov58.functional;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Opt-in tracing of {@link IO} and {@link ZIO} stages.
+ *
+ * <p>
+ * Tracing flag is checked when effects are built, not when they are run. Effects built while tracing
+ * is disabled are not instrumented at all and cost nothing. Effects built while tracing is enabled
+ * wrap user functions of {@code map}, {@code flatMap}, {@code IO.of(Supplier)} and {@code traced(label)}
+ * with the stage, labeled by the call site found with {@link StackWalker} at build time.
+ *
+ * <p>
+ * Each stage run records wall time and bytes allocated by the current thread (when JVM supports
+ * {@code com.sun.management.ThreadMXBean}) into per-label statistics with log2 histogram of durations,
+ * and emits {@link StageEvent} JFR event, which is recorded when JFR recording has it enabled.
+ * Stages time only the user function, except {@code ZIO.flatMap} and {@code traced} stages,
+ * which include running the nested effect.
+ *
+ * <pre>
+ *   Tracing.enable();
+ *   var io = buildPipeline();
+ *   io.run();
+ *   System.out.println(Tracing.report());
+ * </pre>
+ *
+ * @author skopylov@gmail.com
+ */
+public final class Tracing {
+
+  private static volatile boolean enabled;
+
+  private static final Map<String, Stats> STATS = new ConcurrentHashMap<>();
+
+  private static final Set<String> EFFECT_CLASSES = Set.of(
+      Tracing.class.getName(), IO.class.getName(), ZIO.class.getName());
+
+  private static final StackWalker WALKER = StackWalker.getInstance();
+
+  private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+  private Tracing() {}
+
+  public static void enable() {
+    enabled = true;
+  }
+
+  public static void disable() {
+    enabled = false;
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Clears collected statistics.
+   */
+  public static void reset() {
+    STATS.clear();
+  }
+
+  /**
+   * Snapshot of statistics.
+   * @return statistics by stage label
+   */
+  public static Map<String, Stats> snapshot() {
+    return new TreeMap<>(STATS);
+  }
+
+  /**
+   * Human readable report.
+   * @return report, one line per stage
+   */
+  public static String report() {
+    StringBuilder sb = new StringBuilder();
+    snapshot().forEach((label, s) -> sb.append(String.format("%-60s count=%d total=%dus p50<=%dus p99<=%dus alloc=%dB%n",
+        label, s.count(), s.totalNanos() / 1000, s.percentileNanos(0.5) / 1000, s.percentileNanos(0.99) / 1000,
+        s.allocatedBytes())));
+    return sb.toString();
+  }
+
+  static <T, R> Function<T, R> trace(String kind, Function<T, R> f) {
+    Stats stats = stats(kind);
+    return t -> {
+      Probe probe = new Probe(stats);
+      try {
+        return f.apply(t);
+      } finally {
+        probe.done();
+      }
+    };
+  }
+
+  static <T> Supplier<T> trace(String kind, Supplier<T> s) {
+    Stats stats = stats(kind);
+    return () -> {
+      Probe probe = new Probe(stats);
+      try {
+        return s.get();
+      } finally {
+        probe.done();
+      }
+    };
+  }
+
+  private static Stats stats(String kind) {
+    String label = kind + " at " + callSite();
+    return STATS.computeIfAbsent(label, Stats::new);
+  }
+
+  private static String callSite() {
+    Optional<StackWalker.StackFrame> frame = WALKER.walk(frames -> frames
+        .filter(f -> !EFFECT_CLASSES.contains(topLevel(f.getClassName())))
+        .findFirst());
+    return frame.map(f -> f.getClassName() + "." + f.getMethodName() + ":" + f.getLineNumber()).orElse("unknown");
+  }
+
+  private static String topLevel(String className) {
+    int i = className.indexOf('$');
+    return i < 0 ? className : className.substring(0, i);
+  }
+
+  private static long allocatedBytes() {
+    return THREADS == null ? 0 : THREADS.getCurrentThreadAllocatedBytes();
+  }
+
+  private static com.sun.management.ThreadMXBean threadBean() {
+    try {
+      if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+          && bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+        return bean;
+      }
+    } catch (RuntimeException | LinkageError e) {
+      // management is not available
+    }
+    return null;
+  }
+
+  /**
+   * Measures single stage run.
+   */
+  private static final class Probe {
+    final Stats stats;
+    final StageEvent event = new StageEvent();
+    final long start;
+    final long allocated;
+
+    Probe(Stats stats) {
+      this.stats = stats;
+      event.begin();
+      allocated = allocatedBytes();
+      start = System.nanoTime();
+    }
+
+    void done() {
+      long nanos = System.nanoTime() - start;
+      long bytes = allocatedBytes() - allocated;
+      event.end();
+      stats.record(nanos, bytes);
+      if (event.shouldCommit()) {
+        event.label = stats.label();
+        event.allocatedBytes = bytes;
+        event.commit();
+      }
+    }
+  }
+
+  /**
+   * Aggregated statistics of the stage.
+   */
+  public static final class Stats {
+    private final String label;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final AtomicLongArray histogram = new AtomicLongArray(64);
+
+    Stats(String label) {
+      this.label = label;
+    }
+
+    void record(long nanos, long bytes) {
+      count.increment();
+      totalNanos.add(nanos);
+      allocatedBytes.add(bytes);
+      histogram.incrementAndGet(64 - Long.numberOfLeadingZeros(Math.max(0, nanos)) & 63);
+    }
+
+    public String label() {
+      return label;
+    }
+
+    public long count() {
+      return count.sum();
+    }
+
+    public long totalNanos() {
+      return totalNanos.sum();
+    }
+
+    /**
+     * Bytes allocated by stage functions, 0 if JVM does not support allocation counting.
+     * @return allocated bytes
+     */
+    public long allocatedBytes() {
+      return allocatedBytes.sum();
+    }
+
+    /**
+     * Upper bound of the duration percentile, histogram buckets are powers of 2.
+     * @param p percentile between 0 and 1
+     * @return upper bound of the percentile in nanoseconds
+     */
+    public long percentileNanos(double p) {
+      long total = 0;
+      for (int i = 0; i < 64; i++) {
+        total += histogram.get(i);
+      }
+      long rank = (long) Math.ceil(p * total);
+      long seen = 0;
+      for (int i = 0; i < 64; i++) {
+        seen += histogram.get(i);
+        if (seen >= rank && seen > 0) {
+          return i == 63 ? Long.MAX_VALUE : (1L << i);
+        }
+      }
+      return 0;
+    }
+
+    @Override
+    public String toString() {
+      return label + " count=" + count() + " totalNanos=" + totalNanos();
+    }
+  }
+
+  /**
+   * JFR event of the effect stage run.
+   */
+  @Name("com.github.skopylov58.functional.Stage")
+  @Label("Effect Stage")
+  @Category("Functional")
+  @Description("Run of IO/ZIO stage")
+  public static class StageEvent extends Event {
+    @Label("Stage")
+    String label;
+
+    @Label("Allocated Bytes")
+    long allocatedBytes;
+  }
+}
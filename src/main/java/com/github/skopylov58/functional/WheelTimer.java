@@ -0,0 +1,367 @@
+package com.github.skopylov58.functional;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timing wheel scheduler.
+ *
+ * <p>
+ * Timer has the wheel of buckets, each bucket holds timeouts expiring at the same tick modulo wheel size.
+ * Single daemon thread advances the wheel every tick and runs expired tasks. Scheduling just puts the task
+ * into the lock-free queue, which timer thread moves to the bucket, cancellation just marks the task, which
+ * timer thread drops when it visits the bucket. Both are O(1), so hundreds of thousands of pending
+ * timeouts cost one small object each. Precision is one tick, tasks never run early.
+ *
+ * <p>
+ * Tasks run on the timer thread and must be short, use {@link #delayedExecutor(Duration, Executor)}
+ * to run long tasks on another executor. Delayed executor does not call the target executor on the timer thread,
+ * so direct or caller-runs executors do not stall the timer. {@link #shared()} timer is used by delay based
+ * functions of this library.
+ *
+ * <pre>
+ *   ScheduledFuture&lt;?&gt; timeout = WheelTimer.shared().schedule(() -&gt; future.cancel(true), 5, TimeUnit.SECONDS);
+ *   Executor delayed = WheelTimer.shared().delayedExecutor(Duration.ofMillis(100), executor);
+ * </pre>
+ *
+ * @author skopylov@gmail.com
+ */
+public final class WheelTimer extends AbstractExecutorService implements ScheduledExecutorService {
+
+  private static final WheelTimer SHARED = new WheelTimer(Duration.ofMillis(1), 512);
+
+  private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+  private final long tickNanos;
+  private final Bucket[] wheel;
+  private final int mask;
+  private final ConcurrentLinkedQueue<Task<?>> added = new ConcurrentLinkedQueue<>();
+  private final AtomicLong pending = new AtomicLong();
+  private final List<Task<?>> rescheduled = new ArrayList<>();
+  private final Thread worker;
+  private final long startTime;
+  private long tick;
+  private volatile boolean shutdown;
+
+  /**
+   * Creates timer.
+   * @param tick tick duration, timer precision
+   * @param wheelSize number of buckets, is rounded up to the power of 2
+   */
+  public WheelTimer(Duration tick, int wheelSize) {
+    if (tick.toNanos() <= 0 || wheelSize <= 0 || wheelSize > 1 << 20) {
+      throw new IllegalArgumentException();
+    }
+    tickNanos = tick.toNanos();
+    int size = Integer.highestOneBit(Math.max(2, wheelSize - 1)) << 1;
+    wheel = new Bucket[size];
+    for (int i = 0; i < size; i++) {
+      wheel[i] = new Bucket();
+    }
+    mask = size - 1;
+    startTime = System.nanoTime();
+    worker = new Thread(this::loop, "wheel-timer");
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  /**
+   * Shared timer with 1 ms tick, is never shut down.
+   * @return shared timer
+   */
+  public static WheelTimer shared() {
+    return SHARED;
+  }
+
+  /**
+   * Number of scheduled and not yet expired or dropped tasks.
+   * @return number of pending tasks
+   */
+  public long pending() {
+    return pending.get();
+  }
+
+  /**
+   * Executor that submits tasks to the given executor after the delay,
+   * like {@link java.util.concurrent.CompletableFuture#delayedExecutor(long, TimeUnit, Executor)}.
+   * @param delay delay
+   * @param executor executor to run tasks
+   * @return delayed executor
+   */
+  public Executor delayedExecutor(Duration delay, Executor executor) {
+    return r -> schedule(() -> handOff(r, executor), delay.toNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Submits task to the executor from timer task. Executor is called from the default async executor,
+   * so that executors running task in the calling thread or blocking on submission do not stall the timer.
+   * @param task task
+   * @param executor executor to run the task
+   */
+  static void handOff(Runnable task, Executor executor) {
+    if (executor instanceof ForkJoinPool) {
+      // never runs task in the calling thread
+      executor.execute(task);
+    } else {
+      CompletableFuture.runAsync(() -> executor.execute(task));
+    }
+  }
+
+  @Override
+  public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+    return add(new Task<>(command, null, deadline(delay, unit), 0));
+  }
+
+  @Override
+  public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+    return add(new Task<>(callable, deadline(delay, unit), 0));
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+    if (period <= 0) {
+      throw new IllegalArgumentException();
+    }
+    return add(new Task<>(command, null, deadline(initialDelay, unit), unit.toNanos(period)));
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+    if (delay <= 0) {
+      throw new IllegalArgumentException();
+    }
+    return add(new Task<>(command, null, deadline(initialDelay, unit), -unit.toNanos(delay)));
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    schedule(command, 0, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void shutdown() {
+    if (this == SHARED) {
+      throw new UnsupportedOperationException("Shared timer can not be shut down");
+    }
+    shutdown = true;
+    LockSupport.unpark(worker);
+  }
+
+  /**
+   * Shuts down the timer.
+   * @return tasks that were scheduled and have not run
+   */
+  @Override
+  public List<Runnable> shutdownNow() {
+    shutdown();
+    try {
+      worker.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    List<Runnable> res = new ArrayList<>();
+    for (Bucket bucket : wheel) {
+      for (Task<?> t = bucket.head; t != null; t = t.next) {
+        if (!t.isCancelled()) {
+          res.add(t);
+        }
+      }
+    }
+    added.stream().filter(t -> !t.isCancelled()).forEach(res::add);
+    return res;
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return shutdown;
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return shutdown && !worker.isAlive();
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    worker.join(Math.max(1, unit.toMillis(timeout)));
+    return isTerminated();
+  }
+
+  private long deadline(long delay, TimeUnit unit) {
+    return System.nanoTime() + Math.max(0, unit.toNanos(delay));
+  }
+
+  private <V> Task<V> add(Task<V> task) {
+    if (shutdown) {
+      throw new RejectedExecutionException("Timer is shut down");
+    }
+    pending.incrementAndGet();
+    added.add(task);
+    return task;
+  }
+
+  private void loop() {
+    while (!shutdown) {
+      long deadline = startTime + (tick + 1) * tickNanos;
+      for (long wait = deadline - System.nanoTime(); wait > 0 && !shutdown; wait = deadline - System.nanoTime()) {
+        LockSupport.parkNanos(this, wait);
+      }
+      if (shutdown) {
+        return;
+      }
+      transferAdded();
+      expire(wheel[(int) (tick & mask)]);
+      tick++;
+    }
+  }
+
+  private void transferAdded() {
+    for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+      Task<?> task = added.poll();
+      if (task == null) {
+        return;
+      }
+      if (task.isCancelled()) {
+        pending.decrementAndGet();
+        continue;
+      }
+      put(task, tick);
+    }
+  }
+
+  /**
+   * Puts task to the bucket.
+   * @param task task
+   * @param minTick first tick which buckets have not been visited yet, rounds are counted from it
+   */
+  private void put(Task<?> task, long minTick) {
+    long expiresAt = Math.max(minTick, (task.deadline - startTime + tickNanos - 1) / tickNanos - 1);
+    task.rounds = (expiresAt - minTick) / wheel.length;
+    wheel[(int) (expiresAt & mask)].add(task);
+  }
+
+  private void expire(Bucket bucket) {
+    Task<?> t = bucket.head;
+    while (t != null) {
+      Task<?> next = t.next;
+      if (t.isCancelled()) {
+        bucket.remove(t);
+        pending.decrementAndGet();
+      } else if (t.rounds <= 0) {
+        bucket.remove(t);
+        run(t);
+      } else {
+        t.rounds--;
+      }
+      t = next;
+    }
+    // periodic tasks are put after the pass, they may expire in the bucket being visited now
+    for (Task<?> task : rescheduled) {
+      put(task, tick + 1);
+    }
+    rescheduled.clear();
+  }
+
+  private void run(Task<?> task) {
+    try {
+      if (task.period == 0) {
+        pending.decrementAndGet();
+        task.run();
+      } else if (task.runAndReset() && !shutdown) {
+        task.deadline = task.period > 0 ? task.deadline + task.period : System.nanoTime() - task.period;
+        rescheduled.add(task);
+      } else {
+        pending.decrementAndGet();
+      }
+    } catch (Throwable e) {
+      // task failure is kept in its future, do not let it kill the timer
+    }
+  }
+
+  /**
+   * Scheduled task, the node of bucket's doubly linked list.
+   */
+  private static final class Task<V> extends FutureTask<V> implements ScheduledFuture<V> {
+    final long period;
+    long deadline;
+    long rounds;
+    Task<?> prev;
+    Task<?> next;
+
+    Task(Callable<V> callable, long deadline, long period) {
+      super(callable);
+      this.deadline = deadline;
+      this.period = period;
+    }
+
+    Task(Runnable runnable, V result, long deadline, long period) {
+      super(runnable, result);
+      this.deadline = deadline;
+      this.period = period;
+    }
+
+    @Override
+    public boolean runAndReset() {
+      return super.runAndReset();
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+    }
+  }
+
+  /**
+   * Bucket of the wheel, accessed by timer thread only.
+   */
+  private static final class Bucket {
+    Task<?> head;
+    Task<?> tail;
+
+    void add(Task<?> t) {
+      t.prev = tail;
+      t.next = null;
+      if (tail == null) {
+        head = t;
+      } else {
+        tail.next = t;
+      }
+      tail = t;
+    }
+
+    void remove(Task<?> t) {
+      if (t.prev == null) {
+        head = t.next;
+      } else {
+        t.prev.next = t.next;
+      }
+      if (t.next == null) {
+        tail = t.prev;
+      } else {
+        t.next.prev = t.prev;
+      }
+      t.prev = null;
+      t.next = null;
+    }
+  }
+}
@@ -1,6 +1,25 @@
 package com.github.skopylov58.functional;
 
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import com.github.skopylov58.functional.Try.CheckedFunction;
 
 
 /**
@@ -20,16 +39,531 @@ public record ZIO<R,E,A>(Function<R, Either<E,A>> run) {
         return new ZIO<>(__ -> Either.left(e));
     }
 
+    /**
+     * Maps result of this effect. Consecutive maps are fused into the single {@link Mapped} stage,
+     * which applies mappers in a loop and allocates only the final {@link Either}.
+     * @param <B> new result type
+     * @param mapper mapper
+     * @return new effect
+     */
+    @SuppressWarnings("unchecked")
     public <B> ZIO<R,E,B> map(Function<? super A,? extends B> mapper) {
-        return new ZIO<>( r -> {
-            return run.apply(r).map(mapper);
-        });
+        if (Tracing.isEnabled()) {
+            mapper = Tracing.trace("ZIO.map", mapper);
+        }
+        Function<Object,Object> f = (Function<Object,Object>) mapper;
+        if (run instanceof Mapped<R,E,?> m) {
+            return new ZIO<>(new Mapped<>(m.source, m, f));
+        }
+        return new ZIO<>(new Mapped<>(run, null, f));
+    }
+
+    /**
+     * Fused map stage, runs the source and applies all mappers to its success value.
+     * Stages are linked to the previous ones, so building the chain of n maps is O(n),
+     * the chain is flattened to the array of mappers once, on the first run.
+     */
+    private static final class Mapped<R,E,B> implements Function<R, Either<E,B>> {
+        private final Function<R, ? extends Either<E,?>> source;
+        private final Mapped<R,E,?> prev;
+        private final Function<Object,Object> mapper;
+        private final int size;
+        private volatile Function<Object,Object>[] mappers;
+
+        Mapped(Function<R, ? extends Either<E,?>> source, Mapped<R,E,?> prev, Function<Object,Object> mapper) {
+            this.source = source;
+            this.prev = prev;
+            this.mapper = mapper;
+            this.size = prev == null ? 1 : prev.size + 1;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Function<Object,Object>[] mappers() {
+            Function<Object,Object>[] res = mappers;
+            if (res == null) {
+                res = new Function[size];
+                int i = size;
+                for (Mapped<R,E,?> m = this; m != null; m = m.prev) {
+                    res[--i] = m.mapper;
+                }
+                mappers = res;
+            }
+            return res;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Either<E,B> apply(R r) {
+            Either<E,?> ea = source.apply(r);
+            if (ea instanceof Either.Right<E,?> right) {
+                Object value = right.right();
+                for (Function<Object,Object> f : mappers()) {
+                    value = f.apply(value);
+                }
+                return Either.right((B) value);
+            }
+            return (Either<E,B>) ea;
+        }
+    }
+
+    /**
+     * Caches result of this effect for TTL, see {@link #cached(Duration, TimeSource)}.
+     * @param ttl time to live of the result
+     * @return caching effect
+     */
+    public ZIO<R,E,A> cached(Duration ttl) {
+        return cached(ttl, TimeSource.system());
+    }
+
+    /**
+     * Caches result of this effect for TTL. This effect is run at most once per TTL, concurrent runs
+     * of caching effect join the run in progress. Errors are not cached, expired result is refreshed by the next run.
+     * Result is shared regardless of the environment the caching effect is run with.
+     * @param ttl time to live of the result
+     * @param timeSource time source
+     * @return caching effect
+     */
+    public ZIO<R,E,A> cached(Duration ttl, TimeSource timeSource) {
+        Cached<Either<E,A>> cache = new Cached<>(ttl, timeSource, Either::isLeft);
+        return new ZIO<>(r -> cache.get(() -> run.apply(r)));
+    }
+
+    /**
+     * Provides environment to this effect.
+     * @param <R0> any environment type
+     * @param r environment
+     * @return effect not depending on the environment
+     */
+    public <R0> ZIO<R0,E,A> provide(R r) {
+        return new ZIO<>(__ -> run.apply(r));
+    }
+
+    /**
+     * Provides environment built by the layer. Layer is built in the new scope each time the effect is run,
+     * the scope is closed after the effect. To share expensive services between many effects,
+     * build layer once with {@link Layer#build()} and use {@link #provide(Object)}.
+     * @param <R0> any environment type
+     * @param layer environment layer
+     * @param errorMapper maps layer construction failure to the error
+     * @return effect not depending on the environment
+     */
+    public <R0> ZIO<R0,E,A> provideLayer(Layer<? extends R> layer, Function<? super Exception, ? extends E> errorMapper) {
+        return new ZIO<>(__ -> layer.build().fold(
+                built -> {
+                    try (built) {
+                        return run.apply(built.value());
+                    }
+                },
+                e -> Either.left(errorMapper.apply(e))));
     }
 
+    /**
+     * Flat maps this effect. Interruption of the current thread is checked before
+     * running the next effect, interrupted effect throws {@link CancellationException}.
+     * @param <B> new result type
+     * @param mapper mapper
+     * @return new effect
+     */
     public <B> ZIO<R,E,B> flatMap(Function<? super A, ZIO<R,E,B>> mapper) {
-        return new ZIO<>(r -> run.apply(r).fold(
-                    Either::left,
-                    right -> mapper.apply(right).run().apply(r)));
+        Function<? super A, ZIO<R,E,B>> next = Tracing.isEnabled() ? traceNext(mapper) : mapper;
+        return new ZIO<>(r -> {
+            Either<E,A> ea = run.apply(r);
+            if (ea instanceof Either.Right<E,A> right) {
+                Fiber.checkInterrupted();
+                return next.apply(right.right()).run().apply(r);
+            }
+            @SuppressWarnings("unchecked")
+            Either<E,B> left = (Either<E,B>) ea;
+            return left;
+        });
+    }
+
+    private static <R,E,A,B> Function<? super A, ZIO<R,E,B>> traceNext(Function<? super A, ZIO<R,E,B>> mapper) {
+        Function<Tuple<ZIO<R,E,B>,R>, Either<E,B>> run = Tracing.trace("ZIO.flatMap", t -> t.first.run().apply(t.second));
+        return a -> {
+            ZIO<R,E,B> next = mapper.apply(a);
+            return new ZIO<>(r -> run.apply(new Tuple<>(next, r)));
+        };
+    }
+
+    /**
+     * Traces this effect as the single stage when {@link Tracing} is enabled.
+     * @param label stage label
+     * @return traced effect or this effect if tracing is disabled
+     */
+    public ZIO<R,E,A> traced(String label) {
+        return Tracing.isEnabled() ? new ZIO<>(Tracing.trace(label, run)) : this;
+    }
+
+    /**
+     * Creates effect from blocking function. Interruption of blocking function
+     * ({@link InterruptedException}, {@link InterruptedIOException}, {@link ClosedByInterruptException})
+     * is translated to {@link CancellationException}, other exceptions are mapped to the error.
+     * @param <R> environment type
+     * @param <E> error type
+     * @param <A> result type
+     * @param func blocking function
+     * @param errorMapper maps exception to error
+     * @return effect
+     */
+    public static <R,E,A> ZIO<R,E,A> blocking(CheckedFunction<R, ? extends A> func,
+            Function<? super Exception, ? extends E> errorMapper) {
+        return new ZIO<>(r -> {
+            Fiber.checkInterrupted();
+            try {
+                return Either.right(func.apply(r));
+            } catch (InterruptedException | InterruptedIOException | ClosedByInterruptException e) {
+                Thread.currentThread().interrupt();
+                throw Fiber.cancellation(e);
+            } catch (Exception e) {
+                return Either.left(errorMapper.apply(e));
+            }
+        });
+    }
+
+    /**
+     * Runs finalizer after this effect in any case - success, failure, exception or interruption.
+     * Finalizer itself is not interruptible.
+     * @param finalizer finalizer effect, its result is ignored
+     * @return effect with finalizer
+     */
+    public ZIO<R,E,A> ensuring(ZIO<R,?,?> finalizer) {
+        return new ZIO<>(r -> {
+            try {
+                return run.apply(r);
+            } finally {
+                Fiber.uninterruptibly(() -> finalizer.run().apply(r));
+            }
+        });
+    }
+
+    /**
+     * Acquires resource, uses it and releases it. Release is run if use succeeds, fails, throws or is interrupted,
+     * release itself is not interruptible.
+     * @param <R> environment type
+     * @param <E> error type
+     * @param <A> resource type
+     * @param <B> result type
+     * @param acquire acquires resource
+     * @param release releases resource, its result is ignored
+     * @param use uses resource
+     * @return effect
+     */
+    public static <R,E,A,B> ZIO<R,E,B> bracket(ZIO<R,E,A> acquire, Function<? super A, ? extends ZIO<R,?,?>> release,
+            Function<? super A, ? extends ZIO<R,E,B>> use) {
+        return new ZIO<>(r -> {
+            Either<E,A> acquired = acquire.run().apply(r);
+            if (!(acquired instanceof Either.Right<E,A> right)) {
+                @SuppressWarnings("unchecked")
+                Either<E,B> left = (Either<E,B>) acquired;
+                return left;
+            }
+            A a = right.right();
+            ZIO<R,?,?> finalizer = release.apply(a);
+            // no interruption check between acquire and try, so the resource can not leak
+            try {
+                return use.apply(a).run().apply(r);
+            } finally {
+                Fiber.uninterruptibly(() -> finalizer.run().apply(r));
+            }
+        });
+    }
+
+    /**
+     * Uses object borrowed from the pool. Object is returned to the pool after use,
+     * if use throws or is interrupted the object is invalidated.
+     * @param <R> environment type
+     * @param <E> error type
+     * @param <T> pooled object type
+     * @param <B> result type
+     * @param pool pool
+     * @param use uses pooled object
+     * @param errorMapper maps borrow failure to the error
+     * @return effect
+     */
+    public static <R,E,T,B> ZIO<R,E,B> withPooled(Pool<T> pool, Function<? super T, ? extends ZIO<R,E,B>> use,
+            Function<? super Exception, ? extends E> errorMapper) {
+        return new ZIO<>(r -> pool.borrow().fold(t -> {
+            boolean ok = false;
+            try {
+                Either<E,B> res = use.apply(t).run().apply(r);
+                ok = true;
+                return res;
+            } finally {
+                if (ok) {
+                    pool.release(t);
+                } else {
+                    Fiber.uninterruptibly(() -> pool.invalidate(t));
+                }
+            }
+        }, e -> Either.left(errorMapper.apply(e))));
+    }
+
+    /**
+     * Runs finalizer if this effect was interrupted.
+     * Finalizer itself is not interruptible.
+     * @param finalizer finalizer effect, its result is ignored
+     * @return effect with finalizer
+     */
+    public ZIO<R,E,A> onInterrupt(ZIO<R,?,?> finalizer) {
+        return new ZIO<>(r -> {
+            try {
+                return run.apply(r);
+            } catch (CancellationException e) {
+                Fiber.uninterruptibly(() -> finalizer.run().apply(r));
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Runs this effect with timeout. Interruption is scheduled on the shared {@link WheelTimer} and
+     * is cancelled when the effect completes. On timeout effect is interrupted, so it stops
+     * at the next flatMap boundary or blocking call and its finalizers are run.
+     * @param timeout timeout
+     * @param onTimeout error to return on timeout
+     * @return effect with timeout
+     */
+    public ZIO<R,E,A> timeout(Duration timeout, E onTimeout) {
+        return new ZIO<>(r -> {
+            Fiber<E,A> fiber = Fiber.start(this, r, Fiber.defaultExecutor());
+            AtomicBoolean timedOut = new AtomicBoolean();
+            ScheduledFuture<?> timer = WheelTimer.shared().schedule(() -> {
+                if (!fiber.isDone()) {
+                    timedOut.set(true);
+                    fiber.cancel();
+                }
+            }, timeout.toNanos(), TimeUnit.NANOSECONDS);
+            fiber.toFuture().whenComplete((v, e) -> timer.cancel(false));
+            try {
+                return fiber.await();
+            } catch (CancellationException e) {
+                if (timedOut.get() && !Thread.currentThread().isInterrupted()) {
+                    return Either.left(onTimeout);
+                }
+                fiber.cancel();
+                throw e;
+            }
+        });
+    }
+
+    public ZIO<R,E,A> retry(Schedule schedule) {
+        return retry(schedule, TimeSource.system());
+    }
+
+    /**
+     * Retries this effect on failure according to the schedule.
+     * @param schedule retry schedule
+     * @param timeSource time source for the schedule and delays
+     * @return effect giving the first success or the last failure when schedule is done
+     */
+    public ZIO<R,E,A> retry(Schedule schedule, TimeSource timeSource) {
+        return new ZIO<>(r -> {
+            Schedule.Driver driver = schedule.driver(timeSource);
+            for (;;) {
+                Either<E,A> res = run.apply(r);
+                if (res.isRight()) {
+                    return res;
+                }
+                Optional<Duration> delay = driver.next();
+                if (delay.isEmpty()) {
+                    return res;
+                }
+                Schedule.delay(delay.get(), timeSource);
+            }
+        });
+    }
+
+    public ZIO<R,E,A> repeat(Schedule schedule) {
+        return repeat(schedule, TimeSource.system());
+    }
+
+    /**
+     * Repeats this effect on success according to the schedule.
+     * @param schedule repeat schedule
+     * @param timeSource time source for the schedule and delays
+     * @return effect giving the last success when schedule is done or the first failure
+     */
+    public ZIO<R,E,A> repeat(Schedule schedule, TimeSource timeSource) {
+        return new ZIO<>(r -> {
+            Schedule.Driver driver = schedule.driver(timeSource);
+            for (;;) {
+                Either<E,A> res = run.apply(r);
+                if (res.isLeft()) {
+                    return res;
+                }
+                Optional<Duration> delay = driver.next();
+                if (delay.isEmpty()) {
+                    return res;
+                }
+                Schedule.delay(delay.get(), timeSource);
+            }
+        });
+    }
+
+    /**
+     * Runs this effect in the new fiber.
+     * @return effect producing started fiber
+     */
+    public ZIO<R,E,Fiber<E,A>> fork() {
+        return fork(Fiber.defaultExecutor());
+    }
+
+    /**
+     * Runs this effect in the new fiber using given executor.
+     * @param executor executor
+     * @return effect producing started fiber
+     */
+    public ZIO<R,E,Fiber<E,A>> fork(Executor executor) {
+        return new ZIO<>(r -> Either.right(Fiber.start(this, r, executor)));
+    }
+
+    /**
+     * Runs this and that effects concurrently and combines their results.
+     * If one of the effects fails, another one is cancelled.
+     * @param <B> that result type
+     * @param <C> combined result type
+     * @param that effect to run concurrently with this one
+     * @param combiner result combiner
+     * @return combined effect
+     */
+    public <B,C> ZIO<R,E,C> zipPar(ZIO<R,E,B> that, BiFunction<? super A, ? super B, ? extends C> combiner) {
+        return new ZIO<>(r -> {
+            Fiber<E,A> fa = Fiber.start(this, r, Fiber.defaultExecutor());
+            Fiber<E,B> fb = Fiber.start(that, r, Fiber.defaultExecutor());
+            CompletableFuture<Either<E,C>> done = allOrFirstFailure(List.of(fa.toFuture(), fb.toFuture()),
+                    () -> fa.toFuture().join().flatMap(a -> fb.toFuture().join().map(b -> combiner.apply(a, b))));
+            try {
+                return Fiber.await(done);
+            } finally {
+                fa.cancel();
+                fb.cancel();
+            }
+        });
+    }
+
+    /**
+     * Completes when any of futures completes with failure (left or exception)
+     * or when all of them complete successfully.
+     */
+    private static <E,X> CompletableFuture<Either<E,X>> allOrFirstFailure(
+            List<? extends CompletableFuture<? extends Either<E,?>>> futures, Supplier<Either<E,X>> onSuccess) {
+        CompletableFuture<Either<E,X>> done = new CompletableFuture<>();
+        AtomicInteger remaining = new AtomicInteger(futures.size());
+        for (CompletableFuture<? extends Either<E,?>> f : futures) {
+            f.whenComplete((either, ex) -> {
+                if (ex != null) {
+                    done.completeExceptionally(ex);
+                } else if (either.isLeft()) {
+                    @SuppressWarnings("unchecked")
+                    Either<E,X> left = (Either<E,X>) either;
+                    done.complete(left);
+                } else if (remaining.decrementAndGet() == 0) {
+                    try {
+                        done.complete(onSuccess.get());
+                    } catch (RuntimeException | Error e) {
+                        done.completeExceptionally(e);
+                    }
+                }
+            });
+        }
+        return done;
+    }
+
+    /**
+     * Races this and that effects, first successful result wins, loser is cancelled.
+     * Race fails if both effects fail.
+     * @param that effect to race with
+     * @return racing effect
+     */
+    public ZIO<R,E,A> race(ZIO<R,E,A> that) {
+        return new ZIO<>(r -> {
+            List<Fiber<E,A>> fibers = List.of(
+                    Fiber.start(this, r, Fiber.defaultExecutor()),
+                    Fiber.start(that, r, Fiber.defaultExecutor()));
+            CompletableFuture<Either<E,A>> winner = new CompletableFuture<>();
+            AtomicInteger remaining = new AtomicInteger(fibers.size());
+            fibers.forEach(f -> f.toFuture().whenComplete((either, ex) -> {
+                if (ex == null && either.isRight()) {
+                    winner.complete(either);
+                } else if (remaining.decrementAndGet() == 0) {
+                    if (ex == null) {
+                        winner.complete(either);
+                    } else {
+                        winner.completeExceptionally(ex);
+                    }
+                }
+            }));
+            try {
+                return Fiber.await(winner);
+            } finally {
+                fibers.forEach(Fiber::cancel);
+            }
+        });
+    }
+
+    /**
+     * Runs all effects concurrently, collecting their results.
+     * @param <R> environment type
+     * @param <E> error type
+     * @param <A> result type
+     * @param effects effects to run
+     * @return effect producing list of results in the order of effects, or the first failure
+     */
+    public static <R,E,A> ZIO<R,E,List<A>> collectAllPar(List<ZIO<R,E,A>> effects) {
+        return foreachPar(effects, Function.identity(), Math.max(1, effects.size()));
+    }
+
+    /**
+     * Applies effectful function to the collection elements concurrently,
+     * not more than parallelism effects are run at the same time.
+     * On the first failure remaining effects are not started and running ones are cancelled.
+     * @param <R> environment type
+     * @param <E> error type
+     * @param <T> element type
+     * @param <B> result type
+     * @param collection elements
+     * @param func effectful function
+     * @param parallelism max number of concurrent effects
+     * @return effect producing list of results in the order of elements, or the first failure
+     */
+    public static <R,E,T,B> ZIO<R,E,List<B>> foreachPar(Collection<T> collection,
+            Function<? super T, ? extends ZIO<R,E,B>> func, int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException();
+        }
+        List<T> elements = List.copyOf(collection);
+        return new ZIO<>(r -> {
+            int size = elements.size();
+            Object[] results = new Object[size];
+            AtomicInteger next = new AtomicInteger();
+            AtomicBoolean failed = new AtomicBoolean();
+            ZIO<R,E,Void> worker = new ZIO<>(rr -> {
+                for (int i = next.getAndIncrement(); i < size && !failed.get(); i = next.getAndIncrement()) {
+                    Either<E,B> eb = func.apply(elements.get(i)).run().apply(rr);
+                    if (eb.isLeft()) {
+                        failed.set(true);
+                        return eb.map(__ -> null);
+                    }
+                    results[i] = eb.optional().orElse(null);
+                }
+                return Either.right(null);
+            });
+            List<Fiber<E,Void>> workers = IntStream.range(0, Math.min(parallelism, size))
+                    .mapToObj(i -> Fiber.start(worker, r, Fiber.defaultExecutor()))
+                    .toList();
+            @SuppressWarnings("unchecked")
+            List<B> list = (List<B>) Arrays.asList(results);
+            CompletableFuture<Either<E,List<B>>> done = workers.isEmpty()
+                    ? CompletableFuture.completedFuture(Either.right(list))
+                    : allOrFirstFailure(workers.stream().map(Fiber::toFuture).toList(), () -> Either.right(list));
+            try {
+                return Fiber.await(done);
+            } finally {
+                // on the first failure siblings are interrupted without waiting for them
+                workers.forEach(Fiber::cancel);
+            }
+        });
     }
 
 }
@@ -0,0 +1,51 @@
+package com.github.skopylov58.functional;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Count down latch for {@link ZIO} effects.
+ * Waiting fibers are parked (virtual threads are unmounted), waiting is interruptible.
+ */
+public final class ZLatch {
+
+    private final CountDownLatch latch;
+
+    private ZLatch(int count) {
+        latch = new CountDownLatch(count);
+    }
+
+    public static ZLatch make(int count) {
+        return new ZLatch(count);
+    }
+
+    public long count() {
+        return latch.getCount();
+    }
+
+    public <R, E> ZIO<R, E, Void> countDown() {
+        return new ZIO<>(__ -> {
+            latch.countDown();
+            return Either.right(null);
+        });
+    }
+
+    /**
+     * Waits till count reaches zero.
+     * @param <R> environment type
+     * @param <E> error type
+     * @return effect
+     * @throws CancellationException if waiting fiber was interrupted
+     */
+    public <R, E> ZIO<R, E, Void> await() {
+        return new ZIO<>(__ -> {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw Fiber.cancellation(e);
+            }
+            return Either.right(null);
+        });
+    }
+}
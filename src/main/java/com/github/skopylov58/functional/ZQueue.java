@@ -0,0 +1,216 @@
+package com.github.skopylov58.functional;
+
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded multi-producer multi-consumer queue for {@link ZIO} effects.
+ *
+ * <p>
+ * Queue is the array based lock-free ring of D. Vyukov: each slot has a sequence number, producers and
+ * consumers claim slots with single CAS on their position counter and never touch the same counter.
+ * {@link #offer(Object)} and {@link #take()} suspend the fiber when the queue is full or empty,
+ * waiting fibers are parked with {@link LockSupport}, which unmounts virtual threads instead of blocking
+ * carrier threads, and are unparked by the opposite side. Waiting is interruptible.
+ *
+ * @param <A> element type, nulls are not allowed
+ */
+public final class ZQueue<A> {
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final AtomicReferenceArray<A> items;
+    private final AtomicLong enqueuePos = new AtomicLong();
+    private final AtomicLong dequeuePos = new AtomicLong();
+    private final ConcurrentLinkedQueue<Waiter> takers = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Waiter> putters = new ConcurrentLinkedQueue<>();
+
+    private ZQueue(int capacity) {
+        int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        mask = size - 1;
+        sequences = new AtomicLongArray(size);
+        items = new AtomicReferenceArray<>(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Creates bounded queue.
+     * @param <A> element type
+     * @param capacity min capacity, is rounded up to the power of 2
+     * @return queue
+     */
+    public static <A> ZQueue<A> bounded(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException();
+        }
+        return new ZQueue<>(capacity);
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Approximate number of elements.
+     * @return size
+     */
+    public int size() {
+        long size = enqueuePos.get() - dequeuePos.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    /**
+     * Offers element, suspends while queue is full.
+     * @param <R> environment type
+     * @param <E> error type
+     * @param a element
+     * @return effect
+     */
+    public <R,E> ZIO<R,E,Void> offer(A a) {
+        return new ZIO<>(__ -> {
+            unsafeOffer(a);
+            return Either.right(null);
+        });
+    }
+
+    /**
+     * Takes element, suspends while queue is empty.
+     * @param <R> environment type
+     * @param <E> error type
+     * @return effect producing element
+     */
+    public <R,E> ZIO<R,E,A> take() {
+        return new ZIO<>(__ -> Either.right(unsafeTake()));
+    }
+
+    /**
+     * Tries to offer element, never waits.
+     * @param a element
+     * @return false if queue is full
+     */
+    public boolean tryOffer(A a) {
+        Objects.requireNonNull(a);
+        for (;;) {
+            long pos = enqueuePos.get();
+            int i = (int) pos & mask;
+            long diff = sequences.get(i) - pos;
+            if (diff == 0) {
+                if (enqueuePos.compareAndSet(pos, pos + 1)) {
+                    items.lazySet(i, a);
+                    sequences.set(i, pos + 1);
+                    wakeUp(takers);
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false;
+            }
+            // other producer took this slot, retry with new position
+        }
+    }
+
+    /**
+     * Tries to take element, never waits.
+     * @return element or null if queue is empty
+     */
+    public A tryPoll() {
+        for (;;) {
+            long pos = dequeuePos.get();
+            int i = (int) pos & mask;
+            long diff = sequences.get(i) - (pos + 1);
+            if (diff == 0) {
+                if (dequeuePos.compareAndSet(pos, pos + 1)) {
+                    A a = items.get(i);
+                    items.lazySet(i, null);
+                    sequences.set(i, pos + mask + 1);
+                    wakeUp(putters);
+                    return a;
+                }
+            } else if (diff < 0) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Offers element waiting while queue is full.
+     * @param a element
+     * @throws CancellationException if current thread was interrupted
+     */
+    public void unsafeOffer(A a) {
+        while (!tryOffer(a)) {
+            Waiter me = new Waiter();
+            putters.add(me);
+            if (tryOffer(a)) {
+                cancelWait(putters, me);
+                return;
+            }
+            await(putters, me);
+        }
+    }
+
+    /**
+     * Takes element waiting while queue is empty.
+     * @return element
+     * @throws CancellationException if current thread was interrupted
+     */
+    public A unsafeTake() {
+        for (A a = tryPoll(); ; a = tryPoll()) {
+            if (a != null) {
+                return a;
+            }
+            Waiter me = new Waiter();
+            takers.add(me);
+            a = tryPoll();
+            if (a != null) {
+                cancelWait(takers, me);
+                return a;
+            }
+            await(takers, me);
+        }
+    }
+
+    /**
+     * Waiting thread, is queued once per wait. Flag distinguishes wake up from stale unpark permits.
+     */
+    private static final class Waiter {
+        final Thread thread = Thread.currentThread();
+        volatile boolean signalled;
+    }
+
+    private void await(ConcurrentLinkedQueue<Waiter> waiters, Waiter me) {
+        while (!me.signalled) {
+            LockSupport.park(this);
+            if (Thread.currentThread().isInterrupted()) {
+                cancelWait(waiters, me);
+                throw new CancellationException("Interrupted");
+            }
+        }
+    }
+
+    /**
+     * Leaves the wait queue, if waiter has been already polled by the opposite side,
+     * its wake up is passed to another waiter.
+     */
+    private static void cancelWait(ConcurrentLinkedQueue<Waiter> waiters, Waiter me) {
+        if (!waiters.remove(me)) {
+            wakeUp(waiters);
+        }
+    }
+
+    private static void wakeUp(ConcurrentLinkedQueue<Waiter> waiters) {
+        if (!waiters.isEmpty()) {
+            Waiter w = waiters.poll();
+            if (w != null) {
+                w.signalled = true;
+                LockSupport.unpark(w.thread);
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.skopylov58.functional;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Semaphore for {@link ZIO} effects.
+ *
+ * <p>
+ * Fibers waiting for permits are parked in the FIFO queue (virtual threads are unmounted),
+ * waiting is interruptible. {@link #withPermits(int, ZIO)} returns permits when the effect succeeds,
+ * fails, throws or is interrupted.
+ *
+ * <pre>
+ *   ZSemaphore sem = ZSemaphore.make(4);
+ *   ZIO.foreachPar(urls, url -&gt; sem.withPermit(fetch(url)));
+ * </pre>
+ */
+public final class ZSemaphore {
+
+    private final Semaphore semaphore;
+
+    private ZSemaphore(int permits) {
+        semaphore = new Semaphore(permits, true);
+    }
+
+    public static ZSemaphore make(int permits) {
+        return new ZSemaphore(permits);
+    }
+
+    public int available() {
+        return semaphore.availablePermits();
+    }
+
+    /**
+     * Acquires permits, waits while they are not available.
+     * @param <R> environment type
+     * @param <E> error type
+     * @param permits number of permits
+     * @return effect
+     * @throws CancellationException if waiting fiber was interrupted
+     */
+    public <R, E> ZIO<R, E, Void> acquire(int permits) {
+        return new ZIO<>(__ -> {
+            try {
+                semaphore.acquire(permits);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw Fiber.cancellation(e);
+            }
+            return Either.right(null);
+        });
+    }
+
+    public <R, E> ZIO<R, E, Void> release(int permits) {
+        return new ZIO<>(__ -> {
+            semaphore.release(permits);
+            return Either.right(null);
+        });
+    }
+
+    /**
+     * Runs the effect holding the permits.
+     * @param <R> environment type
+     * @param <E> error type
+     * @param <A> result type
+     * @param permits number of permits
+     * @param effect effect to run
+     * @return effect
+     */
+    public <R, E, A> ZIO<R, E, A> withPermits(int permits, ZIO<R, E, A> effect) {
+        return new ZIO<>(r -> {
+            acquire(permits).run().apply(r);
+            // no interruption check between acquire and try, so permits can not leak
+            try {
+                return effect.run().apply(r);
+            } finally {
+                semaphore.release(permits);
+            }
+        });
+    }
+
+    public <R, E, A> ZIO<R, E, A> withPermit(ZIO<R, E, A> effect) {
+        return withPermits(1, effect);
+    }
+}
@@ -0,0 +1,575 @@
+package com.github.skopylov58.functional;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+
+import com.github.skopylov58.functional.Try.CheckedFunction;
+
+/**
+ * Pull based stream of {@link ZIO} effects.
+ *
+ * <p>
+ * Stream is a description, nothing happens until it is run by one of sinks like {@link #fold(Object, BiFunction)}
+ * or {@link #runCollect(Collector)}. Elements are pulled from the source in array backed {@link Chunk}s,
+ * so per element overhead is one array slot and one virtual call per chunk instead of per element.
+ * Only the chunk in progress is held in memory, downstream pulls only when it is ready for the next chunk,
+ * so memory is constant and slow consumers backpressure the source.
+ *
+ * <p>
+ * Source resources (like opened files) are released when the stream completes, fails, is interrupted
+ * or when downstream stops pulling (like {@link #take(long)}).
+ *
+ * <pre>
+ *   ZStream&lt;Void, Exception, String&gt; lines = ZStream.lines(path, Function.identity());
+ *   ZIO&lt;Void, Exception, Long&gt; errors = lines.filter(s -&gt; s.contains("ERROR")).runCount();
+ * </pre>
+ *
+ * @param <R> environment type
+ * @param <E> error type
+ * @param <A> element type
+ */
+public final class ZStream<R, E, A> {
+
+    static final int DEFAULT_CHUNK_SIZE = 512;
+
+    private final Function<R, Pull<E, A>> open;
+
+    private ZStream(Function<R, Pull<E, A>> open) {
+        this.open = open;
+    }
+
+    /**
+     * Opened stream. Pull gives the next non empty chunk, empty chunk signals the end of the stream.
+     * Pull is not called after the end or failure.
+     */
+    @FunctionalInterface
+    interface Pull<E, A> extends AutoCloseable {
+        Either<E, Chunk<A>> pull();
+
+        @Override
+        default void close() {}
+    }
+
+    /**
+     * Immutable array backed chunk of stream elements.
+     * @param <A> element type
+     */
+    public static final class Chunk<A> implements Iterable<A> {
+
+        private static final Chunk<?> EMPTY = new Chunk<>(new Object[0], 0);
+
+        private final Object[] items;
+        private final int size;
+
+        private Chunk(Object[] items, int size) {
+            this.items = items;
+            this.size = size;
+        }
+
+        @SuppressWarnings("unchecked")
+        public static <A> Chunk<A> empty() {
+            return (Chunk<A>) EMPTY;
+        }
+
+        @SafeVarargs
+        public static <A> Chunk<A> of(A... items) {
+            return new Chunk<>(Arrays.copyOf(items, items.length, Object[].class), items.length);
+        }
+
+        static <A> Chunk<A> of(List<? extends A> list) {
+            return new Chunk<>(list.toArray(), list.size());
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        public A get(int i) {
+            if (i >= size) {
+                throw new IndexOutOfBoundsException(i);
+            }
+            return (A) items[i];
+        }
+
+        public <B> Chunk<B> map(Function<? super A, ? extends B> mapper) {
+            Object[] res = new Object[size];
+            for (int i = 0; i < size; i++) {
+                res[i] = mapper.apply(get(i));
+            }
+            return new Chunk<>(res, size);
+        }
+
+        public Chunk<A> filter(Predicate<? super A> predicate) {
+            Object[] res = new Object[size];
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                if (predicate.test(get(i))) {
+                    res[n++] = items[i];
+                }
+            }
+            return n == size ? this : new Chunk<>(res, n);
+        }
+
+        Chunk<A> take(int n) {
+            return n >= size ? this : new Chunk<>(items, n);
+        }
+
+        @SuppressWarnings("unchecked")
+        public List<A> toList() {
+            return (List<A>) Collections.unmodifiableList(Arrays.asList(items).subList(0, size));
+        }
+
+        @Override
+        public Iterator<A> iterator() {
+            return toList().iterator();
+        }
+
+        @Override
+        public String toString() {
+            return "Chunk" + toList();
+        }
+    }
+
+    /**
+     * Creates stream from iterable.
+     * @param <R> environment type
+     * @param <E> error type
+     * @param <A> element type
+     * @param iterable iterable
+     * @return stream
+     */
+    public static <R, E, A> ZStream<R, E, A> fromIterable(Iterable<? extends A> iterable) {
+        return fromIterator(r -> iterable.iterator(), DEFAULT_CHUNK_SIZE);
+    }
+
+    @SafeVarargs
+    public static <R, E, A> ZStream<R, E, A> of(A... items) {
+        // copied element by element, so that the varargs array does not escape
+        List<A> list = new ArrayList<>(items.length);
+        for (A item : items) {
+            list.add(item);
+        }
+        return fromIterable(list);
+    }
+
+    /**
+     * Creates stream of int range.
+     * @param <R> environment type
+     * @param <E> error type
+     * @param from from, inclusive
+     * @param to to, exclusive
+     * @return stream
+     */
+    public static <R, E> ZStream<R, E, Integer> range(int from, int to) {
+        return new ZStream<>(r -> {
+            int[] next = {from};
+            return () -> {
+                int n = (int) Math.min(DEFAULT_CHUNK_SIZE, Math.max(0L, (long) to - next[0]));
+                Object[] items = new Object[n];
+                for (int i = 0; i < n; i++) {
+                    items[i] = next[0]++;
+                }
+                return Either.right(new Chunk<>(items, n));
+            };
+        });
+    }
+
+    /**
+     * Creates stream from iterator opened for each run.
+     * @param <R> environment type
+     * @param <E> error type
+     * @param <A> element type
+     * @param iterator opens iterator
+     * @param chunkSize max chunk size
+     * @return stream
+     */
+    public static <R, E, A> ZStream<R, E, A> fromIterator(Function<R, Iterator<? extends A>> iterator, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException();
+        }
+        return new ZStream<>(r -> {
+            Iterator<? extends A> iter = iterator.apply(r);
+            return () -> Either.right(nextChunk(iter, chunkSize));
+        });
+    }
+
+    /**
+     * Creates stream from Java stream opened for each run, Java stream is closed when this stream is done.
+     * @param <R> environment type
+     * @param <E> error type
+     * @param <A> element type
+     * @param open opens Java stream
+     * @param errorMapper maps opening and reading exceptions to the error
+     * @return stream
+     */
+    public static <R, E, A> ZStream<R, E, A> fromJavaStream(CheckedFunction<R, Stream<? extends A>> open,
+            Function<? super Exception, ? extends E> errorMapper) {
+        return new ZStream<>(r -> {
+            Stream<? extends A> stream;
+            try {
+                stream = open.apply(r);
+            } catch (Exception e) {
+                return () -> Either.left(errorMapper.apply(e));
+            }
+            Iterator<? extends A> iter = stream.iterator();
+            return new Pull<E, A>() {
+                @Override
+                public Either<E, Chunk<A>> pull() {
+                    try {
+                        return Either.right(nextChunk(iter, DEFAULT_CHUNK_SIZE));
+                    } catch (RuntimeException e) {
+                        return Either.left(errorMapper.apply(e));
+                    }
+                }
+
+                @Override
+                public void close() {
+                    stream.close();
+                }
+            };
+        });
+    }
+
+    /**
+     * Creates stream of file lines, file is read lazily and closed when stream is done.
+     * @param <R> environment type
+     * @param <E> error type
+     * @param path file path
+     * @param errorMapper maps IO exceptions to the error
+     * @return stream of lines
+     */
+    public static <R, E> ZStream<R, E, String> lines(Path path, Function<? super Exception, ? extends E> errorMapper) {
+        return fromJavaStream(r -> Files.lines(path), errorMapper);
+    }
+
+    private static <A> Chunk<A> nextChunk(Iterator<? extends A> iter, int chunkSize) {
+        Object[] items = null;
+        int n = 0;
+        while (n < chunkSize && iter.hasNext()) {
+            if (items == null) {
+                items = new Object[chunkSize];
+            }
+            items[n++] = iter.next();
+        }
+        return n == 0 ? Chunk.empty() : new Chunk<>(items, n);
+    }
+
+    private <B> ZStream<R, E, B> transform(BiFunction<R, Pull<E, A>, Supplier<Either<E, Chunk<B>>>> f) {
+        return new ZStream<>(r -> {
+            Pull<E, A> upstream = open.apply(r);
+            Supplier<Either<E, Chunk<B>>> pull = f.apply(r, upstream);
+            return new Pull<E, B>() {
+                @Override
+                public Either<E, Chunk<B>> pull() {
+                    return pull.get();
+                }
+
+                @Override
+                public void close() {
+                    upstream.close();
+                }
+            };
+        });
+    }
+
+    public <B> ZStream<R, E, B> map(Function<? super A, ? extends B> mapper) {
+        return transform((r, up) -> () -> up.pull().map(c -> c.map(mapper)));
+    }
+
+    public ZStream<R, E, A> filter(Predicate<? super A> predicate) {
+        return transform((r, up) -> () -> {
+            for (;;) {
+                Either<E, Chunk<A>> next = up.pull();
+                if (next instanceof Either.Right<E, Chunk<A>> right) {
+                    Chunk<A> chunk = right.right();
+                    Chunk<A> filtered = chunk.filter(predicate);
+                    if (chunk.isEmpty() || !filtered.isEmpty()) {
+                        return Either.right(filtered);
+                    }
+                } else {
+                    return next;
+                }
+            }
+        });
+    }
+
+    /**
+     * Takes first n elements, the source is not pulled after that.
+     * @param n number of elements
+     * @return stream
+     */
+    public ZStream<R, E, A> take(long n) {
+        return transform((r, up) -> {
+            long[] remaining = {n};
+            return () -> {
+                if (remaining[0] <= 0) {
+                    return Either.right(Chunk.empty());
+                }
+                return up.pull().map(c -> {
+                    Chunk<A> res = c.take((int) Math.min(remaining[0], c.size()));
+                    remaining[0] -= res.size();
+                    return res;
+                });
+            };
+        });
+    }
+
+    /**
+     * Maps elements with effectful function, not more than parallelism effects are run at a time.
+     * Order of elements is kept, the first failure fails the stream.
+     * @param <B> new element type
+     * @param func effectful function
+     * @param parallelism max number of concurrent effects
+     * @return stream
+     */
+    public <B> ZStream<R, E, B> mapZIO(Function<? super A, ? extends ZIO<R, E, B>> func, int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException();
+        }
+        return transform((r, up) -> () -> up.pull().flatMap(chunk -> {
+            if (parallelism == 1 || chunk.size() == 1) {
+                Object[] res = new Object[chunk.size()];
+                for (int i = 0; i < res.length; i++) {
+                    Either<E, B> eb = func.apply(chunk.get(i)).run().apply(r);
+                    if (eb.isLeft()) {
+                        return eb.map(__ -> null);
+                    }
+                    res[i] = eb.optional().orElse(null);
+                }
+                return Either.right(new Chunk<>(res, res.length));
+            }
+            return ZIO.foreachPar(chunk.toList(), func, parallelism).run().apply(r).map(Chunk::of);
+        }));
+    }
+
+    public <B> ZStream<R, E, B> mapZIO(Function<? super A, ? extends ZIO<R, E, B>> func) {
+        return mapZIO(func, 1);
+    }
+
+    /**
+     * Groups elements into lists of given size, the last group may be smaller.
+     * @param size group size
+     * @return stream of groups
+     */
+    public ZStream<R, E, List<A>> grouped(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException();
+        }
+        return transform((r, up) -> {
+            List<List<A>> current = new ArrayList<>(List.of(new ArrayList<>(size)));
+            boolean[] done = {false};
+            return () -> {
+                List<List<A>> groups = new ArrayList<>();
+                while (groups.isEmpty() && !done[0]) {
+                    Either<E, Chunk<A>> next = up.pull();
+                    if (next.isLeft()) {
+                        return next.map(__ -> null);
+                    }
+                    Chunk<A> chunk = next.optional().orElseThrow();
+                    if (chunk.isEmpty()) {
+                        done[0] = true;
+                        if (!current.get(0).isEmpty()) {
+                            groups.add(Collections.unmodifiableList(current.get(0)));
+                        }
+                    }
+                    for (A a : chunk) {
+                        current.get(0).add(a);
+                        if (current.get(0).size() == size) {
+                            groups.add(Collections.unmodifiableList(current.get(0)));
+                            current.set(0, new ArrayList<>(size));
+                        }
+                    }
+                }
+                return Either.right(Chunk.of(groups));
+            };
+        });
+    }
+
+    /**
+     * Sliding windows of given size, moving by one element.
+     * Stream shorter than window size gives the single short window.
+     * @param size window size
+     * @return stream of windows
+     */
+    public ZStream<R, E, List<A>> sliding(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException();
+        }
+        return transform((r, up) -> {
+            Deque<A> window = new ArrayDeque<>(size);
+            boolean[] emitted = {false};
+            boolean[] done = {false};
+            return () -> {
+                List<List<A>> windows = new ArrayList<>();
+                while (windows.isEmpty() && !done[0]) {
+                    Either<E, Chunk<A>> next = up.pull();
+                    if (next.isLeft()) {
+                        return next.map(__ -> null);
+                    }
+                    Chunk<A> chunk = next.optional().orElseThrow();
+                    if (chunk.isEmpty()) {
+                        done[0] = true;
+                        if (!emitted[0] && !window.isEmpty()) {
+                            windows.add(List.copyOf(window));
+                        }
+                    }
+                    for (A a : chunk) {
+                        if (window.size() == size) {
+                            window.removeFirst();
+                        }
+                        window.addLast(a);
+                        if (window.size() == size) {
+                            windows.add(List.copyOf(window));
+                            emitted[0] = true;
+                        }
+                    }
+                }
+                return Either.right(Chunk.of(windows));
+            };
+        });
+    }
+
+    /**
+     * Concatenates this stream with that stream.
+     * @param that stream to run after this one
+     * @return concatenated stream
+     */
+    public ZStream<R, E, A> concat(ZStream<R, E, A> that) {
+        return new ZStream<>(r -> {
+            List<Pull<E, A>> current = new ArrayList<>(List.of(open.apply(r)));
+            boolean[] second = {false};
+            return new Pull<E, A>() {
+                @Override
+                public Either<E, Chunk<A>> pull() {
+                    Either<E, Chunk<A>> next = current.get(0).pull();
+                    if (!second[0] && next.optional().map(Chunk::isEmpty).orElse(false)) {
+                        second[0] = true;
+                        Pull<E, A> first = current.get(0);
+                        Fiber.uninterruptibly(first::close);
+                        current.set(0, that.open.apply(r));
+                        return current.get(0).pull();
+                    }
+                    return next;
+                }
+
+                @Override
+                public void close() {
+                    current.get(0).close();
+                }
+            };
+        });
+    }
+
+    /**
+     * Folds chunks of the stream, stream is interrupted between chunks.
+     */
+    private <S> ZIO<R, E, S> foldChunks(Supplier<S> init, BiFunction<S, Chunk<A>, S> step) {
+        return new ZIO<>(r -> {
+            Pull<E, A> pull = open.apply(r);
+            try {
+                S state = init.get();
+                for (;;) {
+                    Fiber.checkInterrupted();
+                    Either<E, Chunk<A>> next = pull.pull();
+                    if (next.isLeft()) {
+                        return next.map(__ -> null);
+                    }
+                    Chunk<A> chunk = next.optional().orElseThrow();
+                    if (chunk.isEmpty()) {
+                        return Either.right(state);
+                    }
+                    state = step.apply(state, chunk);
+                }
+            } finally {
+                Fiber.uninterruptibly(pull::close);
+            }
+        });
+    }
+
+    /**
+     * Folds stream elements.
+     * @param <Z> result type
+     * @param zero initial value
+     * @param f folding function
+     * @return effect producing folded value
+     */
+    public <Z> ZIO<R, E, Z> fold(Z zero, BiFunction<Z, ? super A, Z> f) {
+        return foldChunks(() -> zero, (z, chunk) -> {
+            for (int i = 0; i < chunk.size(); i++) {
+                z = f.apply(z, chunk.get(i));
+            }
+            return z;
+        });
+    }
+
+    /**
+     * Runs stream to collector.
+     * @param <Z> result type
+     * @param collector collector
+     * @return effect producing collected result
+     */
+    public <Z> ZIO<R, E, Z> runCollect(Collector<? super A, ?, Z> collector) {
+        return collect(collector);
+    }
+
+    private <S, Z> ZIO<R, E, Z> collect(Collector<? super A, S, Z> collector) {
+        BiConsumer<S, ? super A> acc = collector.accumulator();
+        return foldChunks(collector.supplier(), (S s, Chunk<A> chunk) -> {
+            chunk.forEach(a -> acc.accept(s, a));
+            return s;
+        }).map(collector.finisher());
+    }
+
+    public ZIO<R, E, List<A>> runCollect() {
+        return foldChunks(ArrayList<A>::new, (list, chunk) -> {
+            list.addAll(chunk.toList());
+            return list;
+        }).map(Collections::unmodifiableList);
+    }
+
+    public ZIO<R, E, Long> runCount() {
+        return foldChunks(() -> 0L, (n, chunk) -> n + chunk.size());
+    }
+
+    public ZIO<R, E, Void> foreach(Consumer<? super A> consumer) {
+        return foldChunks(() -> (Void) null, (v, chunk) -> {
+            chunk.forEach(consumer);
+            return v;
+        });
+    }
+
+    /**
+     * Gets the first element of the stream, the rest of the stream is not pulled.
+     * @return effect producing the first element
+     * @throws NoSuchElementException when run on empty stream
+     */
+    public ZIO<R, E, A> runHead() {
+        return take(1).runCollect().map(list -> {
+            if (list.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            return list.get(0);
+        });
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.skopylov58.functional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class BulkheadTest {
+
+  @Test
+  public void testFixedRejectsWithoutBlocking() throws Exception {
+    Bulkhead bulkhead = Bulkhead.fixed(2);
+    CountDownLatch started = new CountDownLatch(2);
+    CountDownLatch release = new CountDownLatch(1);
+
+    Supplier<Try<String>> slow = bulkhead.decorate(() -> {
+      started.countDown();
+      release.await();
+      return "done";
+    });
+
+    ExecutorService ex = Executors.newFixedThreadPool(2);
+    Future<Try<String>> f1 = ex.submit(slow::get);
+    Future<Try<String>> f2 = ex.submit(slow::get);
+    started.await();
+    assertEquals(2, bulkhead.inFlight());
+
+    Try<String> rejected = slow.get();
+    assertTrue(rejected.isFailure());
+    rejected.onFailure(e -> assertTrue(e instanceof RejectedExecutionException));
+
+    release.countDown();
+    assertEquals("done", f1.get().get());
+    assertEquals("done", f2.get().get());
+    assertEquals(0, bulkhead.inFlight());
+    ex.shutdown();
+  }
+
+  @Test
+  public void testFailureReleasesPermit() throws Exception {
+    Bulkhead bulkhead = Bulkhead.fixed(1);
+    Function<String, Try<Integer>> parse = bulkhead.decorate(Integer::parseInt);
+    assertTrue(parse.apply("foo").isFailure());
+    assertEquals(Integer.valueOf(3), parse.apply("3").get());
+    assertEquals(0, bulkhead.inFlight());
+  }
+
+  @Test
+  public void testAimdLimit() throws Exception {
+    Bulkhead bulkhead = Bulkhead.aimd(2, 20, Duration.ofMillis(100));
+    assertEquals(2, bulkhead.limit());
+
+    IntStream.range(0, 1000).forEach(i -> {
+      int acquired = 0;
+      while (bulkhead.tryAcquire()) {
+        acquired++;
+      }
+      for (int j = 0; j < acquired; j++) {
+        bulkhead.release(0, true);
+      }
+    });
+    assertEquals(20, bulkhead.limit());
+
+    IntStream.range(0, 100).forEach(i -> {
+      bulkhead.tryAcquire();
+      bulkhead.release(Duration.ofSeconds(1).toNanos(), true);
+    });
+    assertEquals(2, bulkhead.limit());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWrongLimit() throws Exception {
+    Bulkhead.fixed(0);
+  }
+}
@@ -0,0 +1,104 @@
+package com.github.skopylov58.functional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class DataLoaderTest {
+
+  static Map<Integer, String> users(Set<Integer> ids) {
+    return ids.stream().filter(i -> i >= 0).collect(Collectors.toMap(Function.identity(), i -> "user" + i));
+  }
+
+  @Test
+  public void testBatching() {
+    List<Set<Integer>> calls = new CopyOnWriteArrayList<>();
+    DataLoader<Integer, String> loader = DataLoader.of(ids -> {
+      calls.add(ids);
+      return users(ids);
+    });
+    List<Integer> ids = IntStream.range(0, 100).map(i -> i % 50).boxed().toList();
+
+    List<Optional<String>> res = IO.traverse(ids, loader::load).run();
+    assertEquals(100, res.size());
+    assertEquals(Optional.of("user7"), res.get(57));
+    assertEquals(1, calls.size());
+    assertEquals(50, calls.get(0).size());
+
+    // cached values are not loaded again, new keys are loaded by one more batch
+    res = IO.traverse(List.of(1, 2, 100, -1), loader::load).run();
+    assertEquals(List.of(Optional.of("user1"), Optional.of("user2"), Optional.of("user100"), Optional.empty()), res);
+    assertEquals(2, calls.size());
+    assertEquals(Set.of(100, -1), calls.get(1));
+  }
+
+  @Test
+  public void testMaxBatchSize() {
+    DataLoader<Integer, String> loader = DataLoader.of(DataLoaderTest::users, 10);
+    IO<List<String>> io = IO.traverse(IntStream.range(0, 95).boxed().toList(),
+        id -> loader.load(id).map(Optional::orElseThrow));
+    assertEquals("user94", io.run().get(94));
+    assertEquals(10, loader.batches());
+  }
+
+  @Test
+  public void testFailureIsNotCached() {
+    List<Set<Integer>> calls = new CopyOnWriteArrayList<>();
+    DataLoader<Integer, String> loader = DataLoader.of(ids -> {
+      calls.add(ids);
+      if (calls.size() == 1) {
+        throw new IllegalStateException("db is down");
+      }
+      return users(ids);
+    });
+    try {
+      IO.traverse(List.of(1, 2), loader::load).run();
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("db is down", e.getMessage());
+    }
+    assertEquals(Optional.of("user1"), loader.load(1).run());
+    assertEquals(2, calls.size());
+
+    loader.clear();
+    assertTrue(loader.load(1).run().isPresent());
+    assertEquals(3, calls.size());
+  }
+
+  @Test
+  public void testRerunAfterFailure() {
+    List<Set<Integer>> calls = new CopyOnWriteArrayList<>();
+    DataLoader<Integer, String> loader = DataLoader.of(ids -> {
+      calls.add(ids);
+      if (calls.size() == 1) {
+        throw new IllegalStateException("db is down");
+      }
+      return users(ids);
+    });
+    IO<Optional<String>> io = loader.load(1);
+    try {
+      io.run();
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("db is down", e.getMessage());
+    }
+    // the same IO is not stuck with the failed load
+    assertEquals(Optional.of("user1"), io.run());
+    assertEquals(2, calls.size());
+
+    loader.clear();
+    assertEquals(Optional.of("user1"), io.run());
+    assertEquals(3, calls.size());
+  }
+}
@@ -0,0 +1,134 @@
+package com.github.skopylov58.functional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+import org.junit.Test;
+
+public class HedgeTest {
+
+  @Test
+  public void testHedgeWinsAndPrimaryIsCancelled() throws Exception {
+    ExecutorService ex = Executors.newCachedThreadPool();
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch interrupted = new CountDownLatch(1);
+
+    Hedge hedge = Hedge.of(FPUtils.fixedDelay(Duration.ofMillis(20)), RateLimiter.of(10, Duration.ofSeconds(1)), ex);
+    Callable<String> read = hedge.decorate(() -> {
+      if (calls.getAndIncrement() == 0) {
+        try {
+          Thread.sleep(10_000);
+        } catch (InterruptedException e) {
+          interrupted.countDown();
+          throw e;
+        }
+        return "primary";
+      }
+      return "hedge";
+    });
+
+    Duration dur = FPUtils.measure(() -> assertEquals("hedge", Try.of(read::call).get()));
+    System.out.println("Hedged call: " + dur);
+    assertTrue(dur.toMillis() < 5_000);
+    assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    assertEquals(1, hedge.hedges());
+    ex.shutdownNow();
+  }
+
+  @Test
+  public void testWinnerIsNotInterrupted() throws Exception {
+    ExecutorService pool = Executors.newCachedThreadPool();
+    AtomicInteger interrupted = new AtomicInteger();
+    Executor ex = r -> pool.execute(() -> {
+      r.run();
+      if (Thread.interrupted()) {
+        interrupted.incrementAndGet();
+      }
+    });
+    Hedge hedge = Hedge.of(FPUtils.fixedDelay(Duration.ofSeconds(10)), RateLimiter.of(10, Duration.ofSeconds(1)), ex);
+    Callable<String> read = hedge.decorate(() -> "primary");
+    for (int i = 0; i < 100; i++) {
+      assertEquals("primary", read.call());
+    }
+    pool.shutdown();
+    assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    assertEquals(0, interrupted.get());
+  }
+
+  @Test
+  public void testLoserLatencyIsRecorded() throws Exception {
+    ExecutorService ex = Executors.newCachedThreadPool();
+    Hedge.Latencies latencies = new Hedge.Latencies(1, 1, Duration.ofMillis(20));
+    AtomicInteger calls = new AtomicInteger();
+    Hedge hedge = Hedge.of(latencies, RateLimiter.of(10, Duration.ofSeconds(1)), ex);
+    Callable<String> read = hedge.decorate(() -> {
+      if (calls.getAndIncrement() == 0) {
+        Thread.sleep(10_000);
+      }
+      return "foo";
+    });
+    assertEquals("foo", read.call());
+    // cancelled primary is recorded as not faster than hedge delay, not the fast hedge latency
+    long deadline = System.currentTimeMillis() + 5_000;
+    while (latencies.apply(1L).equals(Duration.ofMillis(20)) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+    assertTrue(latencies.apply(1L).compareTo(Duration.ofMillis(20)) >= 0);
+    ex.shutdownNow();
+  }
+
+  @Test
+  public void testHedgeRateLimit() throws Exception {
+    ExecutorService ex = Executors.newCachedThreadPool();
+    Hedge hedge = Hedge.of(FPUtils.fixedDelay(Duration.ZERO), RateLimiter.of(1, Duration.ofHours(1)), ex);
+    Callable<String> read = hedge.decorate(() -> {
+      Thread.sleep(20);
+      return "foo";
+    });
+    for (int i = 0; i < 5; i++) {
+      assertEquals("foo", read.call());
+    }
+    assertEquals(1, hedge.hedges());
+    ex.shutdownNow();
+  }
+
+  @Test
+  public void testFailure() throws Exception {
+    ExecutorService ex = Executors.newCachedThreadPool();
+    Hedge hedge = Hedge.of(0.9, RateLimiter.of(10, Duration.ofSeconds(1)), ex);
+    var future = hedge.decorateAsync(() -> {
+      throw new IOException("failed");
+    }).get();
+    try {
+      future.get();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IOException);
+    }
+    assertTrue(future.isCompletedExceptionally());
+    ex.shutdownNow();
+  }
+
+  @Test
+  public void testLatencies() throws Exception {
+    Hedge.Latencies latencies = new Hedge.Latencies(100, 0.95, Duration.ofSeconds(1));
+    assertEquals(Duration.ofSeconds(1), latencies.apply(1L));
+    LongStream.rangeClosed(1, 100).map(i -> Duration.ofMillis(i).toNanos()).forEach(latencies::record);
+    assertEquals(Duration.ofMillis(95), latencies.apply(1L));
+
+    // percentile delay may be used as retry backoff
+    var res = FPUtils.retry(() -> "ok", 1, latencies);
+    assertEquals("ok", res.get());
+  }
+}
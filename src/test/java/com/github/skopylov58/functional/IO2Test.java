@@ -2,7 +2,10 @@ package com.github.skopylov58.functional;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.Properties;
 import org.junit.Test;
@@ -60,4 +63,67 @@ public class IO2Test {
     System.out.println("res = " + res);
   }
 
+  @Test
+  public void testParTraverse() {
+    IO2<Properties, List<String>> io = IO2.parTraverse(List.of("1", "2", "3"), key -> ctx -> {
+      sleep(50);
+      return Result.success(ctx.getProperty(key));
+    }, 3);
+    Properties p = new Properties();
+    p.put("1", "one");
+    p.put("2", "two");
+    p.put("3", "three");
+    Monad<List<String>> res = io.run(p);
+    assertTrue(res instanceof Result.Success);
+    assertEquals(List.of("one", "two", "three"), res.getOrDefault(null));
+
+    assertEquals(Optional.of(List.of()), IO2.parSequence(List.<IO2<Void, String>>of(), 2).run().optional());
+  }
+
+  @Test
+  public void testParTraverseFailure() {
+    IO2<Void, List<Integer>> io = IO2.parTraverse(List.of(1, 2, 3, 4), i -> ctx -> {
+      if (i == 2) {
+        return Option.none();
+      }
+      sleep(10_000);
+      return Option.some(i);
+    }, 4, false);
+    long start = System.nanoTime();
+    Monad<List<Integer>> res = io.run();
+    assertTrue(res instanceof Option.None);
+    assertTrue(System.nanoTime() - start < 1_000_000_000L);
+
+    IO2<Void, Integer> failed = ctx -> Result.failure(new IllegalStateException());
+    Monad<List<Integer>> res2 = IO2.parSequence(List.of(IO2.of(1), failed), 2).run();
+    assertTrue(res2 instanceof Result.Failure);
+  }
+
+  @Test
+  public void testWithPooledInvalidatesUninterruptibly() {
+    List<Boolean> interruptedOnDestroy = new ArrayList<>();
+    Pool<Object> pool = Pool.of(Object::new, o -> interruptedOnDestroy.add(Thread.currentThread().isInterrupted()), 1);
+    IO2<Void, Integer> io = IO2.withPooled(pool, o -> ctx -> {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted use");
+    });
+    try {
+      io.run();
+      fail();
+    } catch (IllegalStateException e) {
+      // use failure is propagated
+    }
+    // interruption status is restored after invalidation
+    assertTrue(Thread.interrupted());
+    assertEquals(List.of(false), interruptedOnDestroy);
+    assertEquals(0, pool.borrowed());
+  }
+
+  static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
 }
@@ -4,6 +4,13 @@ import static org.junit.Assert.*;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
 import org.junit.Test;
 
 public class IOTest {
@@ -27,6 +34,153 @@ public class IOTest {
     
   }
   
+  @Test
+  public void testStackSafeFlatMapChain() throws Exception {
+    IO<Integer> io = IO.of(0);
+    for (int i = 0; i < 1_000_000; i++) {
+      io = io.flatMap(x -> IO.of(x + 1));
+    }
+    assertEquals(Integer.valueOf(1_000_000), io.run());
+  }
+
+  @Test
+  public void testStackSafeMapChain() throws Exception {
+    IO<Integer> io = () -> 0;
+    for (int i = 0; i < 1_000_000; i++) {
+      io = io.map(x -> x + 1);
+    }
+    assertEquals(Integer.valueOf(1_000_000), io.run());
+  }
+
+  IO<Long> countDown(long n, long acc) {
+    return n == 0 ? IO.pure(acc) : IO.of(() -> n).flatMap(x -> countDown(x - 1, acc + x));
+  }
+
+  IO<Long> count(long n) {
+    return n == 0 ? IO.pure(0L) : IO.of(() -> n).flatMap(x -> count(x - 1).map(c -> c + 1));
+  }
+
+  @Test
+  public void testStackSafeRecursiveLoop() throws Exception {
+    assertEquals(Long.valueOf(500_000_500_000L), countDown(1_000_000, 0).run());
+    assertEquals(Long.valueOf(1_000_000), count(1_000_000).run());
+    IO<Integer> deferred = IO.defer(() -> IO.of(42));
+    assertEquals(Integer.valueOf(42), deferred.run());
+  }
+
+  @Test
+  public void testShortChainDoesNotAllocateRunLoopStack() throws Exception {
+    IO<Integer> chain = IO.of(1).map(x -> x + 1).flatMap(x -> IO.of(x * 2)).map(x -> x - 1);
+    int runs = 1_000_000;
+    for (int i = 0; i < runs; i++) {
+      chain.run();
+    }
+    long bytes = ZIOTest.allocatedBytes();
+    long sum = 0;
+    for (int i = 0; i < runs; i++) {
+      sum += chain.run();
+    }
+    bytes = ZIOTest.allocatedBytes() - bytes;
+    assertEquals(3L * runs, sum);
+    // only IO returned by flatMap continuation is allocated, 16 bytes, run loop stack would add 48 more
+    assertTrue("allocated " + bytes + " bytes", bytes < 32L * runs);
+  }
+
+  @Test
+  public void testInterruption() throws Exception {
+    AtomicInteger steps = new AtomicInteger();
+    AtomicBoolean finalized = new AtomicBoolean();
+    AtomicReference<Throwable> error = new AtomicReference<>();
+    IO<Long> loop = IO.of(() -> steps.incrementAndGet()).flatMap(x -> loop());
+
+    Thread t = new Thread(() -> {
+      try {
+        loop.onInterrupt(() -> finalized.set(true)).run();
+      } catch (Throwable e) {
+        error.set(e);
+      }
+    });
+    t.start();
+    Thread.sleep(50);
+    t.interrupt();
+    t.join(1000);
+    assertFalse(t.isAlive());
+    assertTrue(error.get() instanceof CancellationException);
+    assertTrue(finalized.get());
+    assertTrue(steps.get() > 0);
+  }
+
+  IO<Long> loop() {
+    return IO.defer(() -> IO.of(1L).flatMap(x -> loop()));
+  }
+
+  @Test
+  public void testBlocking() throws Exception {
+    AtomicBoolean finalized = new AtomicBoolean();
+    AtomicReference<Throwable> error = new AtomicReference<>();
+    IO<String> sleep = IO.blocking(() -> {
+      Thread.sleep(10_000);
+      return "foo";
+    });
+    Thread t = new Thread(() -> {
+      try {
+        sleep.ensuring(() -> finalized.set(true)).run();
+      } catch (Throwable e) {
+        error.set(e);
+      }
+    });
+    t.start();
+    Thread.sleep(20);
+    t.interrupt();
+    t.join(1000);
+    assertTrue(error.get() instanceof CancellationException);
+    assertTrue(error.get().getCause() instanceof InterruptedException);
+    assertTrue(finalized.get());
+  }
+
+  static IO<Integer> sleepAndGet(long millis, int value) {
+    return IO.blocking(() -> {
+      Thread.sleep(millis);
+      return value;
+    });
+  }
+
+  @Test
+  public void testParTraverse() throws Exception {
+    List<Integer> list = IntStream.range(0, 20).boxed().toList();
+    IO<List<Integer>> io = IO.parTraverse(list, i -> sleepAndGet(50 - 2 * i, i * 10), 10);
+    Duration dur = FPUtils.measure(() -> assertEquals(list.stream().map(i -> i * 10).toList(), io.run()));
+    System.out.println("parTraverse: " + dur);
+    assertTrue(dur.toMillis() < 500);
+
+    List<Integer> unordered = IO.parTraverse(List.of(100, 10), i -> sleepAndGet(i, i), 2, false).run();
+    assertEquals(List.of(10, 100), unordered);
+    assertEquals(List.of(), IO.parSequence(List.of(), 4).run());
+  }
+
+  @Test
+  public void testParTraverseFailure() throws Exception {
+    AtomicInteger started = new AtomicInteger();
+    IO<List<Integer>> io = IO.parTraverse(IntStream.range(0, 100).boxed().toList(), i -> IO.blocking(() -> {
+      started.incrementAndGet();
+      if (i == 3) {
+        throw new IOException("failed " + i);
+      }
+      Thread.sleep(10_000);
+      return i;
+    }), 4);
+    Duration dur = FPUtils.measure(() -> {
+      try {
+        io.run();
+        fail();
+      } catch (Exception e) {
+        assertTrue(e instanceof IOException);
+      }
+    });
+    assertTrue(dur.toMillis() < 1000);
+    assertEquals(4, started.get());
+  }
+
   IO<String> getLine() {
     return () -> "foo";
   }
@@ -61,4 +215,49 @@ public class IOTest {
     }
 
   }
+
+  @Test
+  public void testCached() throws Exception {
+    TimeSource.Virtual ts = TimeSource.virtual();
+    AtomicInteger runs = new AtomicInteger();
+    AtomicBoolean unavailable = new AtomicBoolean(true);
+    IO<Integer> token = IO.of(() -> {
+      if (unavailable.get()) {
+        runs.incrementAndGet();
+        throw new IllegalStateException("unavailable");
+      }
+      return runs.incrementAndGet();
+    }).cached(Duration.ofMinutes(5), ts);
+    assertEquals(0, runs.get());
+
+    // failure is not cached
+    for (int i = 0; i < 2; i++) {
+      try {
+        token.run();
+        fail();
+      } catch (IllegalStateException e) {
+        // expected
+      }
+    }
+    assertEquals(2, runs.get());
+
+    unavailable.set(false);
+    assertEquals(Integer.valueOf(3), token.run());
+    ts.advance(Duration.ofMinutes(4));
+    assertEquals(Integer.valueOf(3), token.run());
+    ts.advance(Duration.ofMinutes(1));
+    assertEquals(Integer.valueOf(4), token.run());
+  }
+
+  @Test
+  public void testCachedJoinsInFlightRun() throws Exception {
+    AtomicInteger runs = new AtomicInteger();
+    IO<Integer> slow = IO.blocking(() -> {
+      Thread.sleep(50);
+      return runs.incrementAndGet();
+    }).cached(Duration.ofSeconds(10));
+    List<Integer> results = IO.parSequence(List.of(slow, slow, slow, slow), 4).run();
+    assertEquals(List.of(1, 1, 1, 1), results);
+    assertEquals(1, runs.get());
+  }
 }
@@ -0,0 +1,84 @@
+package com.github.skopylov58.functional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Test;
+
+public class IntStateTest {
+
+  @Test
+  public void testPrimitives() {
+    IntState<String> st = IntState.get()
+        .flatMap(x -> IntState.put(x * 10))
+        .flatMap(__ -> IntState.modify(x -> x + 1))
+        .flatMap(__ -> IntState.gets(x -> "offset " + x));
+    Tuple<String, Integer> res = st.apply(4);
+    assertEquals("offset 41", res.first);
+    assertEquals(Integer.valueOf(41), res.second);
+    IntState.Cell cell = new IntState.Cell(1);
+    assertEquals("offset 11", st.run(cell));
+    assertEquals(11, cell.get());
+    // user defined step
+    IntState<Boolean> even = c -> c.get() % 2 == 0;
+    assertEquals(Boolean.FALSE, st.flatMap(__ -> even).eval(1));
+  }
+
+  static IntState<Void> countTo(int n) {
+    return IntState.gets(x -> x < n)
+        .flatMap(more -> more ? IntState.modify(x -> x + 1).flatMap(__ -> countTo(n)) : IntState.pure(null));
+  }
+
+  @Test
+  public void testStackSafety() {
+    assertEquals(1_000_000, countTo(1_000_000).exec(0));
+  }
+
+  static State<Void, Integer> boxedCountTo(int n) {
+    return State.<Boolean, Integer>gets(x -> x < n)
+        .flatMap(more -> more ? State.<Integer>modify(x -> x + 1).flatMap(__ -> boxedCountTo(n)) : State.pure(null));
+  }
+
+  static long allocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+  }
+
+  /**
+   * Runs warmed up code and returns total bytes allocated by the measured runs.
+   */
+  static long measure(Runnable run, int runs) {
+    for (int i = 0; i < 20; i++) {
+      run.run(); // warm up
+    }
+    long bytes = allocatedBytes();
+    for (int i = 0; i < runs; i++) {
+      run.run();
+    }
+    return allocatedBytes() - bytes;
+  }
+
+  @Test
+  public void testCompareWithBoxedState() {
+    int steps = 100_000;
+    int runs = 20;
+    IntState<Void> unboxed = countTo(steps);
+    State<Void, Integer> boxed = boxedCountTo(steps);
+    IntState.Cell cell = new IntState.Cell(0);
+    State.Cell<Integer> boxedCell = new State.Cell<>(0);
+    long unboxedBytes = measure(() -> {
+      cell.set(0);
+      unboxed.run(cell);
+    }, runs);
+    long boxedBytes = measure(() -> {
+      boxedCell.set(0);
+      boxed.run(boxedCell);
+    }, runs);
+    assertEquals(steps, cell.get());
+    assertEquals(Integer.valueOf(steps), boxedCell.get());
+    // both chains allocate the same nodes and closures per step, boxed one also allocates Integer per step
+    long boxes = (long) runs * (steps - 128);
+    assertTrue(unboxedBytes + "/" + boxedBytes, boxedBytes - unboxedBytes >= 12 * boxes);
+  }
+}
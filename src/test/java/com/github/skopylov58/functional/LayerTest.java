@@ -0,0 +1,86 @@
+package com.github.skopylov58.functional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class LayerTest {
+
+    record Config(String url) {}
+    record Db(Config config) {}
+    record Cache(Config config) {}
+    record Env(Db db, Cache cache) {}
+
+    @Test
+    public void testMemoizedParallelBuild() throws Exception {
+        AtomicInteger configs = new AtomicInteger();
+        List<String> events = new CopyOnWriteArrayList<>();
+
+        Layer<Config> config = Layer.scoped(() -> {
+            configs.incrementAndGet();
+            events.add("config open");
+            return new Config("jdbc:test");
+        }, c -> events.add("config close"));
+        Layer<Db> db = config.toScoped(c -> {
+            Thread.sleep(100);
+            events.add("db open");
+            return new Db(c);
+        }, d -> events.add("db close"));
+        Layer<Cache> cache = config.toScoped(c -> {
+            Thread.sleep(100);
+            events.add("cache open");
+            return new Cache(c);
+        }, c -> events.add("cache close"));
+        Layer<Env> env = db.zipPar(cache, Env::new);
+
+        long start = System.nanoTime();
+        try (var built = env.build().orElseThrow()) {
+            Duration dur = Duration.ofNanos(System.nanoTime() - start);
+            System.out.println("Layer build: " + dur);
+            assertTrue(dur.toMillis() < 190);
+            assertEquals(1, configs.get());
+            assertTrue(built.value().db().config() == built.value().cache().config());
+
+            ZIO<Env,String,String> app = new ZIO<>(e -> Either.right(e.db().config().url()));
+            assertEquals(Either.right("jdbc:test"), app.<Void>provide(built.value()).run().apply(null));
+        }
+        assertEquals(6, events.size());
+        // dependency is acquired first and released last
+        assertEquals("config open", events.get(0));
+        assertEquals("config close", events.get(5));
+    }
+
+    @Test
+    public void testFailureReleasesAcquired() throws Exception {
+        List<String> events = new CopyOnWriteArrayList<>();
+        Layer<String> ok = Layer.scoped(() -> "ok", s -> events.add("released"));
+        Layer<String> failed = Layer.of(() -> {
+            Thread.sleep(50);
+            throw new IOException("failed");
+        });
+        Try<Layer.Built<String>> built = ok.zipPar(failed, String::concat).build();
+        assertTrue(built.isFailure());
+        assertEquals(List.of("released"), events);
+    }
+
+    @Test
+    public void testProvideLayer() throws Exception {
+        List<String> events = new CopyOnWriteArrayList<>();
+        Layer<Config> config = Layer.scoped(() -> new Config("url"), c -> events.add("closed"));
+        ZIO<Config,String,String> app = new ZIO<>(c -> Either.right(c.url()));
+        assertEquals(Either.right("url"), app.<Void>provideLayer(config, Exception::getMessage).run().apply(null));
+        assertEquals(List.of("closed"), events);
+
+        Layer<Config> failed = Layer.of(() -> {
+            throw new IOException("no config");
+        });
+        assertEquals(Either.left("no config"), app.<Void>provideLayer(failed, Exception::getMessage).run().apply(null));
+    }
+}
@@ -0,0 +1,30 @@
+package com.github.skopylov58.functional;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class LongStateTest {
+
+  @Test
+  public void testChecksum() {
+    List<String> lines = List.of("alpha", "beta", "gamma");
+    LongState<Integer> checksum = LongState.pure(0);
+    for (String line : lines) {
+      checksum = checksum.flatMap(n -> LongState.modify(h -> h * 31 + line.hashCode()).map(__ -> n + 1));
+    }
+    Tuple<Integer, Long> res = checksum.apply(7L);
+    assertEquals(Integer.valueOf(3), res.first);
+    long expected = 7L;
+    for (String line : lines) {
+      expected = expected * 31 + line.hashCode();
+    }
+    assertEquals(Long.valueOf(expected), res.second);
+    assertEquals(expected, checksum.exec(7L));
+
+    LongState<Long> offset = LongState.put(Long.MAX_VALUE - 1).flatMap(__ -> LongState.get());
+    assertEquals(Long.valueOf(Long.MAX_VALUE - 1), offset.eval(0));
+  }
+}
@@ -0,0 +1,160 @@
+package com.github.skopylov58.functional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class PoolTest {
+
+  static class Conn {
+    final int id;
+    volatile boolean broken;
+
+    Conn(int id) {
+      this.id = id;
+    }
+  }
+
+  @Test
+  public void testReuseAndBound() throws Exception {
+    AtomicInteger created = new AtomicInteger();
+    List<Conn> destroyed = new CopyOnWriteArrayList<>();
+    Pool<Conn> pool = Pool.of(() -> new Conn(created.incrementAndGet()), destroyed::add, c -> !c.broken,
+        2, Duration.ofMinutes(1), Duration.ofMillis(50));
+
+    Conn c1 = pool.borrow().orElseThrow();
+    Conn c2 = pool.borrow().orElseThrow();
+    assertEquals(2, pool.borrowed());
+    Try<Conn> c3 = pool.borrow();
+    assertTrue(c3.isFailure());
+    c3.onFailure(e -> assertTrue(e instanceof TimeoutException));
+
+    pool.release(c2);
+    assertEquals(1, pool.idle());
+    assertTrue(c2 == pool.borrow().orElseThrow());
+
+    // broken object fails validation and is replaced
+    c2.broken = true;
+    pool.release(c2);
+    Conn c4 = pool.borrow().orElseThrow();
+    assertEquals(3, c4.id);
+    assertEquals(List.of(c2), destroyed);
+
+    pool.release(c1);
+    pool.release(c4);
+    pool.close();
+    assertEquals(3, destroyed.size());
+    assertEquals(0, pool.idle());
+    assertEquals(0, pool.borrowed());
+  }
+
+  @Test
+  public void testIdleEviction() {
+    TimeSource.Virtual ts = TimeSource.virtual();
+    AtomicInteger created = new AtomicInteger();
+    AtomicInteger destroyed = new AtomicInteger();
+    Pool<Conn> pool = new Pool<>(() -> new Conn(created.incrementAndGet()), c -> destroyed.incrementAndGet(),
+        c -> true, 10, Duration.ofSeconds(30), Duration.ZERO, ts);
+    Conn c1 = pool.borrow().orElseThrow();
+    Conn c2 = pool.borrow().orElseThrow();
+    pool.release(c1);
+    ts.advance(Duration.ofSeconds(20));
+    pool.release(c2);
+    ts.advance(Duration.ofSeconds(20));
+    pool.evictExpired();
+    assertEquals(1, destroyed.get());
+    assertEquals(1, pool.idle());
+    assertTrue(c2 == pool.borrow().orElseThrow());
+  }
+
+  @Test
+  public void testWithPooledInvalidatesOnFailure() {
+    AtomicInteger destroyed = new AtomicInteger();
+    Pool<Conn> pool = Pool.of(() -> new Conn(0), c -> destroyed.incrementAndGet(), 1);
+    assertEquals(Integer.valueOf(0), pool.withPooled(c -> c.id).orElseThrow());
+    Try<Integer> failed = pool.withPooled(c -> {
+      throw new IOException("broken pipe");
+    });
+    assertTrue(failed.isFailure());
+    assertEquals(1, destroyed.get());
+    assertEquals(0, pool.borrowed());
+
+    AtomicInteger released = new AtomicInteger();
+    ZIO<Void, String, Integer> zio = ZIO.withPooled(pool, c -> ZIO.succeed(c.id), Exception::toString);
+    assertEquals(Either.right(0), zio.run().apply(null));
+    ZIO<Void, String, Integer> bracket = ZIO.bracket(ZIO.succeed(new Conn(1)),
+        c -> new ZIO<>(r -> Either.right(released.incrementAndGet())),
+        c -> ZIO.fail("failed " + c.id));
+    assertEquals(Either.left("failed 1"), bracket.run().apply(null));
+    assertEquals(1, released.get());
+
+    IO2<Properties, Integer> io2 = IO2.withPooled(pool, c -> ctx -> Option.some(c.id + 1));
+    assertEquals(Integer.valueOf(1), io2.run(new Properties()).getOrDefault(0));
+    IO2<Void, Integer> io2bracket = IO2.bracket(c -> Result.success(new Conn(2)), c -> released.incrementAndGet(),
+        c -> ctx -> Option.none());
+    assertTrue(io2bracket.run() instanceof Option.None);
+    assertEquals(2, released.get());
+    assertEquals(0, pool.borrowed());
+  }
+
+  @Test
+  public void testConcurrentBorrow() throws Exception {
+    AtomicInteger created = new AtomicInteger();
+    AtomicInteger inUse = new AtomicInteger();
+    AtomicInteger maxInUse = new AtomicInteger();
+    AtomicLong sum = new AtomicLong();
+    Pool<Conn> pool = Pool.of(() -> new Conn(created.incrementAndGet()), c -> {}, 4);
+    ExecutorService ex = Executors.newFixedThreadPool(16);
+    for (int i = 0; i < 10_000; i++) {
+      ex.execute(() -> pool.withPooled(c -> {
+        maxInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+        sum.incrementAndGet();
+        inUse.decrementAndGet();
+        return c;
+      }));
+    }
+    ex.shutdown();
+    assertTrue(ex.awaitTermination(10, TimeUnit.SECONDS));
+    assertEquals(10_000, sum.get());
+    assertTrue(maxInUse.get() <= 4);
+    assertTrue(created.get() <= 4);
+    assertEquals(0, pool.borrowed());
+  }
+
+  @Test
+  public void testBracketReleasesWhenUseThrowsOnConstruction() {
+    AtomicInteger released = new AtomicInteger();
+    ZIO<Void, String, Integer> bracket = ZIO.bracket(ZIO.succeed(new Conn(1)),
+        c -> new ZIO<>(r -> Either.right(released.incrementAndGet())),
+        c -> {
+          throw new IllegalStateException("can not build effect");
+        });
+    try {
+      bracket.run().apply(null);
+      throw new AssertionError("expected exception");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    assertEquals(1, released.get());
+
+    // failed acquire does not release
+    ZIO<Void, String, Integer> notAcquired = ZIO.bracket(ZIO.<Void, String, Conn>fail("no conn"),
+        c -> new ZIO<>(r -> Either.right(released.incrementAndGet())),
+        c -> ZIO.succeed(c.id));
+    assertEquals(Either.left("no conn"), notAcquired.run().apply(null));
+    assertEquals(1, released.get());
+  }
+}
@@ -0,0 +1,69 @@
+package com.github.skopylov58.functional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+
+import org.junit.Test;
+
+public class PromiseTest {
+
+  @Test
+  public void testCompleteOnce() {
+    Promise<String, Integer> p = Promise.make();
+    assertEquals(Optional.empty(), p.poll());
+    Fiber<String, Integer> waiter = Fiber.start(p.<Void>await().map(x -> x + 1), null, Fiber.defaultExecutor());
+    assertEquals(Either.right(true), p.<Void, String>succeed(1).run().apply(null));
+    assertEquals(Either.right(false), p.<Void, String>fail("late").run().apply(null));
+    assertEquals(Either.right(2), waiter.await());
+    assertEquals(Optional.of(Either.right(1)), p.poll());
+  }
+
+  @Test
+  public void testFailure() {
+    Promise<String, Integer> p = Promise.make();
+    ZIO<Void, String, Boolean> producer = p.completeWith(ZIO.fail("boom"));
+    ZIO<Void, String, Integer> both = producer.fork().flatMap(__ -> p.await());
+    assertEquals(Either.left("boom"), both.run().apply(null));
+    assertTrue(p.isDone());
+  }
+
+  @Test
+  public void testEffectThrows() {
+    Promise<String, Integer> p = Promise.make();
+    Fiber<String, Integer> waiter = Fiber.start(p.<Void>await(), null, Fiber.defaultExecutor());
+    ZIO<Void, String, Boolean> producer = p.completeWith(new ZIO<>(__ -> {
+      throw new IllegalStateException("defect");
+    }));
+    try {
+      producer.run().apply(null);
+      throw new AssertionError("expected defect");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    assertTrue(p.isDone());
+    try {
+      waiter.await();
+      throw new AssertionError("expected defect");
+    } catch (IllegalStateException e) {
+      assertEquals("defect", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testInterruptAwait() {
+    Promise<String, Integer> p = Promise.make();
+    Fiber<String, Integer> waiter = Fiber.start(p.<Void>await(), null, Fiber.defaultExecutor());
+    waiter.<Void>interrupt().run().apply(null);
+    try {
+      waiter.await();
+      throw new AssertionError("expected cancellation");
+    } catch (CancellationException e) {
+      // expected
+    }
+    assertFalse(p.isDone());
+  }
+}
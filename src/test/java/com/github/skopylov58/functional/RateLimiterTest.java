@@ -0,0 +1,124 @@
+package com.github.skopylov58.functional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class RateLimiterTest {
+
+  @Test
+  public void testTryAcquire() throws Exception {
+    TimeSource.Virtual time = TimeSource.virtual();
+    RateLimiter limiter = RateLimiter.of(10, Duration.ofSeconds(1), 2, time);
+
+    assertTrue(limiter.tryAcquire());
+    assertTrue(limiter.tryAcquire());
+    assertFalse(limiter.tryAcquire());
+
+    time.advance(Duration.ofMillis(100));
+    assertTrue(limiter.tryAcquire());
+    assertFalse(limiter.tryAcquire());
+
+    // bucket does not grow more than burst
+    time.advance(Duration.ofHours(1));
+    assertEquals(2, IntStream.range(0, 10).filter(i -> limiter.tryAcquire()).count());
+  }
+
+  @Test
+  public void testTimeOverflow() throws Exception {
+    TimeSource.Virtual time = TimeSource.virtual();
+    time.advance(Duration.ofNanos(Long.MAX_VALUE - Duration.ofMillis(50).toNanos()));
+    RateLimiter limiter = RateLimiter.of(10, Duration.ofSeconds(1), 2, time);
+    assertTrue(limiter.tryAcquire());
+    assertTrue(limiter.tryAcquire());
+    assertFalse(limiter.tryAcquire());
+
+    // nano time wraps around
+    time.advance(Duration.ofMillis(100));
+    assertTrue(time.nanoTime() < 0);
+    assertTrue(limiter.tryAcquire());
+    assertFalse(limiter.tryAcquire());
+    assertEquals(Duration.ofMillis(100).toNanos(), limiter.reserve());
+
+    time.advance(Duration.ofHours(1));
+    assertEquals(2, IntStream.range(0, 10).filter(i -> limiter.tryAcquire()).count());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBurstOverflow() {
+    RateLimiter.of(1, Duration.ofDays(1), Long.MAX_VALUE);
+  }
+
+  @Test
+  public void testReserve() throws Exception {
+    TimeSource.Virtual time = TimeSource.virtual();
+    RateLimiter limiter = RateLimiter.of(10, Duration.ofSeconds(1), 1, time);
+    assertEquals(0, limiter.reserve());
+    assertEquals(Duration.ofMillis(100).toNanos(), limiter.reserve());
+    assertEquals(Duration.ofMillis(200).toNanos(), limiter.reserve());
+  }
+
+  @Test
+  public void testBlockingWithVirtualTime() throws Exception {
+    TimeSource.Virtual time = TimeSource.virtual();
+    RateLimiter limiter = RateLimiter.of(1, Duration.ofMinutes(1), 1, time);
+    for (int i = 0; i < 60; i++) {
+      limiter.acquire();
+    }
+    assertEquals(Duration.ofMinutes(59), time.elapsed());
+  }
+
+  @Test
+  public void testDecorate() throws Exception {
+    RateLimiter limiter = RateLimiter.of(1, Duration.ofHours(1));
+    Function<String, Try<Integer>> parse = limiter.decorate(Integer::parseInt);
+    assertEquals(Integer.valueOf(1), parse.apply("1").get());
+    Try<Integer> throttled = parse.apply("2");
+    assertTrue(throttled.isFailure());
+    throttled.onFailure(e -> assertTrue(e instanceof RejectedExecutionException));
+  }
+
+  @Test
+  public void testBlockingAndAsync() throws Exception {
+    RateLimiter limiter = RateLimiter.of(100, Duration.ofSeconds(1), 1);
+    Function<Integer, Try<Integer>> blocking = limiter.decorateBlocking(i -> i + 1);
+    Function<Integer, CompletableFuture<Integer>> async = limiter.decorateAsync(i -> i * 2);
+
+    Duration dur = FPUtils.measure(() -> {
+      IntStream.range(0, 5).forEach(i -> assertEquals(Integer.valueOf(i + 1), blocking.apply(i).get()));
+      IntStream.range(0, 5).mapToObj(async::apply).toList().forEach(CompletableFuture::join);
+    });
+    assertTrue(dur.toMillis() >= 80);
+  }
+
+  @Test
+  public void testThroughput() throws Exception {
+    RateLimiter limiter = RateLimiter.of(Long.MAX_VALUE / 2, Duration.ofDays(1));
+    LongAdder acquired = new LongAdder();
+    int threads = Runtime.getRuntime().availableProcessors();
+    ExecutorService ex = Executors.newFixedThreadPool(threads);
+    IntStream.range(0, threads)
+    .mapToObj(i -> ex.submit(() -> {
+      for (int j = 0; j < 1_000_000; j++) {
+        if (limiter.tryAcquire()) {
+          acquired.increment();
+        }
+      }
+    }))
+    .toList()
+    .forEach(f -> Try.of(() -> f.get()));
+    ex.shutdown();
+    assertEquals(threads * 1_000_000L, acquired.sum());
+  }
+}
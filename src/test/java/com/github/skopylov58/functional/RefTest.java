@@ -0,0 +1,69 @@
+package com.github.skopylov58.functional;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+import org.junit.Test;
+
+public class RefTest {
+
+  @Test
+  public void testEffects() {
+    Ref<Integer> ref = Ref.of(1);
+    ZIO<Void, String, Integer> zio = ref.<Void, String>update(x -> x + 1)
+        .flatMap(__ -> ref.modify(x -> new Tuple<>("was " + x, x * 10)))
+        .flatMap(s -> ref.<Void, String>get().map(x -> s.length() + x));
+    // effects are lazy
+    assertEquals(Integer.valueOf(1), ref.unsafeGet());
+    assertEquals(Either.right(25), zio.run().apply(null));
+    assertEquals(Either.right(216), zio.run().apply(null));
+    assertEquals(Integer.valueOf(210), ref.unsafeGet());
+    assertEquals(Integer.valueOf(7), IO.of(() -> ref.unsafeUpdateAndGet(x -> 7)).run());
+  }
+
+  @Test
+  public void testContention() throws Exception {
+    int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+    int increments = 200_000;
+    for (int round = 0; round < 3; round++) {
+      Ref<Long> ref = Ref.of(0L);
+      ZIO<Void, String, Void> inc = ref.update(x -> x + 1);
+      long refNanos = contended(threads, i -> {
+        for (int k = 0; k < increments; k++) {
+          inc.run().apply(null);
+        }
+      });
+      assertEquals(Long.valueOf((long) threads * increments), ref.unsafeGet());
+
+      long[] counter = new long[1];
+      Object lock = new Object();
+      long syncNanos = contended(threads, i -> {
+        for (int k = 0; k < increments; k++) {
+          synchronized (lock) {
+            counter[0]++;
+          }
+        }
+      });
+      assertEquals((long) threads * increments, counter[0]);
+      System.out.printf("Ref.update %d threads: %d ns/op, synchronized: %d ns/op%n", threads,
+          refNanos / ((long) threads * increments), syncNanos / ((long) threads * increments));
+    }
+  }
+
+  static long contended(int threads, IntConsumer body) throws InterruptedException {
+    List<Thread> list = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      int n = i;
+      list.add(new Thread(() -> body.accept(n)));
+    }
+    long start = System.nanoTime();
+    list.forEach(Thread::start);
+    for (Thread t : list) {
+      t.join();
+    }
+    return System.nanoTime() - start;
+  }
+}
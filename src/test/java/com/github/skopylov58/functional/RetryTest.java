@@ -1,9 +1,25 @@
 package com.github.skopylov58.functional;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
+import java.util.stream.IntStream;
 import java.util.stream.LongStream;
+import java.util.stream.Stream;
 import org.junit.Test;
 import com.github.skopylov58.functional.FPUtils.Backoff;
 
@@ -40,5 +56,187 @@ public class RetryTest {
     
   }
 
+  Callable<String> failingTimes(int times) {
+    AtomicInteger counter = new AtomicInteger();
+    return () -> {
+      if (counter.getAndIncrement() < times) {
+        throw new IOException("Attempt failed");
+      }
+      return "ok";
+    };
+  }
+
+  static class RecordingListener implements RetryListener {
+    final List<String> events = new ArrayList<>();
+
+    @Override
+    public void onAttemptStart(long attempt) {
+      events.add("start " + attempt);
+    }
+
+    @Override
+    public void onAttemptFailure(long attempt, Exception failure) {
+      events.add("failure " + attempt);
+    }
+
+    @Override
+    public void onSuccess(long attempts) {
+      events.add("success " + attempts);
+    }
+
+    @Override
+    public void onGiveUp(long attempts, Exception lastFailure) {
+      events.add("give up " + attempts + " " + lastFailure.getMessage());
+    }
+  }
+
+  @Test
+  public void testRetryListener() throws Exception {
+    var listener = new RecordingListener();
+    Optional<String> res = FPUtils.retry(failingTimes(2), 5, FPUtils.fixedDelay(Duration.ZERO), x -> true, listener);
+    assertEquals("ok", res.get());
+    assertEquals(List.of("start 0", "failure 0", "start 1", "failure 1", "start 2", "success 3"), listener.events);
+
+    listener = new RecordingListener();
+    res = FPUtils.retry2(failingTimes(5), i -> i < 2, FPUtils.fixedDelay(Duration.ZERO), x -> true, listener);
+    assertFalse(res.isPresent());
+    assertEquals(List.of("start 0", "failure 0", "start 1", "failure 1", "give up 2 Attempt failed"), listener.events);
+  }
+
+  @Test
+  public void testRetryWithHistory() throws Exception {
+    RetryResult<String> res = FPUtils.retryWithHistory(failingTimes(3), 3, FPUtils.fixedDelay(Duration.ofMillis(1)),
+        x -> true, RetryListener.logging(Duration.ofMinutes(1)));
+    assertFalse(res.success());
+    assertEquals(3, res.attempts().size());
+    assertTrue(res.attempts().stream().allMatch(RetryResult.Attempt::isFailure));
+    assertEquals(Duration.ZERO, res.attempts().get(0).delay());
+    assertEquals(Duration.ofMillis(1), res.attempts().get(1).delay());
+    assertEquals("Attempt failed", res.lastFailure().get().getMessage());
+
+    res = FPUtils.retryWithHistory(failingTimes(1), 3, FPUtils.fixedDelay(Duration.ZERO), x -> true, RetryListener.noop());
+    assertTrue(res.success());
+    assertEquals("ok", res.value());
+    assertEquals(2, res.attempts().size());
+    assertFalse(res.attempts().get(1).isFailure());
+  }
+
+  @Test
+  public void testRetryWithVirtualTime() throws Exception {
+    TimeSource.Virtual time = TimeSource.virtual();
+    Backoff backoff = FPUtils.exponentialBackoff(1000, Duration.ofHours(1).toMillis());
+    RetryResult<String> res = FPUtils.retryWithHistory(failingTimes(100), 20, backoff, x -> true,
+        RetryListener.noop(), time);
+    assertFalse(res.success());
+    Duration expected = LongStream.range(1, 20).mapToObj(backoff::apply).reduce(Duration.ZERO, Duration::plus);
+    assertEquals(expected, time.elapsed());
+    assertEquals(19, time.sleeps());
+    System.out.println("Virtual time elapsed: " + time.elapsed());
+  }
+
+  @Test
+  public void testRetryOptionalWithVirtualTime() throws Exception {
+    TimeSource.Virtual time = TimeSource.virtual();
+    Optional<String> res = FPUtils.retry(failingTimes(3), 10, FPUtils.fixedDelay(Duration.ofMinutes(1)), x -> true,
+        RetryListener.noop(), time);
+    assertTrue(res.isPresent());
+    assertEquals(Duration.ofMinutes(3), time.elapsed());
+  }
+
+  @Test
+  public void testManyRetryConfigurations() throws Exception {
+    for (int failures = 0; failures < 30; failures++) {
+      for (int retries = 1; retries < 30; retries++) {
+        for (long min = 1; min < 10_000; min *= 3) {
+          TimeSource.Virtual time = TimeSource.virtual();
+          Backoff backoff = FPUtils.exponentialBackoff(min, 100 * min);
+          Optional<String> res = FPUtils.retry2(failingTimes(failures), i -> i < 1_000, backoff,
+              x -> true, RetryListener.noop(), time);
+          assertTrue(res.isPresent());
+          Duration expected = LongStream.rangeClosed(1, failures).mapToObj(backoff::apply)
+              .reduce(Duration.ZERO, Duration::plus);
+          assertEquals(expected, time.elapsed());
+
+          time = TimeSource.virtual();
+          RetryResult<String> rr = FPUtils.retryWithHistory(failingTimes(failures), retries, backoff,
+              x -> true, RetryListener.noop(), time);
+          assertEquals(failures < retries, rr.success());
+          assertEquals(Math.min(failures + 1, retries), rr.attempts().size());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testSleepWithVirtualTime() throws Exception {
+    TimeSource.Virtual time = TimeSource.virtual();
+    assertTrue(FPUtils.sleep(Duration.ofDays(1), time));
+    assertEquals(Duration.ofDays(1), time.elapsed());
+  }
+
+  @Test
+  public void testMapWithRetryOrdered() throws Exception {
+    Map<Integer, AtomicInteger> attempts = new ConcurrentHashMap<>();
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger maxInFlight = new AtomicInteger();
+    ExecutorService ex = Executors.newFixedThreadPool(8);
+
+    List<Try<Integer>> res = FPUtils.mapWithRetry(IntStream.range(0, 50).boxed(), i -> {
+      maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+      try {
+        // every element fails 2 times, element 7 always fails
+        if (attempts.computeIfAbsent(i, k -> new AtomicInteger()).incrementAndGet() < 3 || i == 7) {
+          throw new IOException("Transient failure " + i);
+        }
+        return i * 10;
+      } finally {
+        inFlight.decrementAndGet();
+      }
+    }, FPUtils.fixedDelay(Duration.ofMillis(1)), 5, 4, true, ex).toList();
+    ex.shutdown();
+
+    assertEquals(50, res.size());
+    for (int i = 0; i < 50; i++) {
+      if (i == 7) {
+        assertTrue(res.get(i).isFailure());
+        assertEquals(5, attempts.get(i).get());
+      } else {
+        assertEquals(Integer.valueOf(i * 10), res.get(i).get());
+        assertEquals(3, attempts.get(i).get());
+      }
+    }
+    assertTrue(maxInFlight.get() <= 4);
+  }
+
+  @Test
+  public void testMapWithRetryUnordered() throws Exception {
+    ExecutorService ex = Executors.newCachedThreadPool();
+    List<Integer> res = FPUtils.mapWithRetry(Stream.of(0, 1, 2, 3), i -> {
+      if (i == 0) {
+        Thread.sleep(200);
+      }
+      return i;
+    }, FPUtils.fixedDelay(Duration.ZERO), 1, 4, false, ex)
+    .map(Try::get)
+    .toList();
+    ex.shutdown();
+    // slow element does not stall others
+    assertEquals(Integer.valueOf(0), res.get(3));
+  }
+
+  @Test(timeout = 5000)
+  public void testMapWithRetryUnorderedDefect() throws Exception {
+    ExecutorService ex = Executors.newCachedThreadPool();
+    List<Try<Integer>> res = FPUtils.mapWithRetry(Stream.of(0, 1, 2), i -> {
+      if (i == 1) {
+        throw new AssertionError("defect");
+      }
+      return i;
+    }, FPUtils.fixedDelay(Duration.ZERO), 1, 3, false, ex).toList();
+    ex.shutdown();
+    // exceptionally completed future is delivered as failure, not lost
+    assertEquals(3, res.size());
+    assertEquals(1, res.stream().filter(Try::isFailure).count());
+  }
 
 }
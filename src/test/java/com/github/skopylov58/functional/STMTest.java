@@ -0,0 +1,114 @@
+package com.github.skopylov58.functional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class STMTest {
+
+  static STM<Void> transfer(TRef<Integer> from, TRef<Integer> to, int amount) {
+    return from.get()
+        .flatMap(balance -> STM.check(balance >= amount))
+        .flatMap(__ -> from.update(b -> b - amount))
+        .flatMap(__ -> to.update(b -> b + amount))
+        .map(__ -> null);
+  }
+
+  @Test
+  public void testCommit() {
+    TRef<Integer> a = TRef.make(100);
+    TRef<Integer> b = TRef.make(0);
+    ZIO<Void, String, Integer> zio = transfer(a, b, 30).<Void, String>commit()
+        .flatMap(__ -> a.get().flatMap(x -> b.get().map(y -> x * 1000 + y)).commit());
+    assertEquals(Either.right(70_030), zio.run().apply(null));
+    assertEquals(Integer.valueOf(70), a.unsafeGet());
+    assertEquals("was 30", b.modify(x -> new Tuple<>("was " + x, 0)).unsafeCommit());
+    assertEquals(Integer.valueOf(0), b.unsafeGet());
+  }
+
+  @Test
+  public void testFailureDiscardsWrites() {
+    TRef<Integer> a = TRef.make(1);
+    try {
+      a.set(2).map(__ -> Integer.parseInt("x")).unsafeCommit();
+      throw new AssertionError();
+    } catch (NumberFormatException e) {
+      // expected
+    }
+    assertEquals(Integer.valueOf(1), a.unsafeGet());
+  }
+
+  @Test
+  public void testRetryWaitsForChange() {
+    TRef<Integer> a = TRef.make(0);
+    TRef<Integer> b = TRef.make(0);
+    Fiber<String, Void> waiter = Fiber.start(transfer(a, b, 50).commit(), null, Fiber.defaultExecutor());
+    for (int i = 0; i < 5; i++) {
+      a.update(x -> x + 10).unsafeCommit();
+    }
+    assertEquals(Either.right(null), waiter.await());
+    assertEquals(Integer.valueOf(0), a.unsafeGet());
+    assertEquals(Integer.valueOf(50), b.unsafeGet());
+  }
+
+  @Test
+  public void testOrElse() {
+    TRef<Integer> a = TRef.make(10);
+    TRef<Integer> b = TRef.make(0);
+    TRef<String> log = TRef.make("");
+    STM<String> stm = log.set("first").flatMap(__ -> transfer(a, b, 20)).map(__ -> "transferred")
+        .orElse(log.get().map(s -> "insufficient" + s));
+    assertEquals("insufficient", stm.unsafeCommit());
+    assertEquals("", log.unsafeGet());
+    assertEquals(Integer.valueOf(10), a.unsafeGet());
+  }
+
+  @Test(expected = CancellationException.class)
+  public void testInterruptRetry() {
+    TRef<Integer> a = TRef.make(0);
+    Fiber<String, Void> waiter = Fiber.start(a.get().flatMap(x -> STM.check(x > 0)).commit(), null,
+        Fiber.defaultExecutor());
+    waiter.<Void>interrupt().run().apply(null);
+    waiter.await();
+  }
+
+  @Test
+  public void testContention() throws Exception {
+    int accounts = 64;
+    int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+    int ops = 100_000;
+    List<TRef<Integer>> refs = new ArrayList<>();
+    for (int i = 0; i < accounts; i++) {
+      refs.add(TRef.make(1000));
+    }
+    AtomicLong observed = new AtomicLong();
+    RefTest.contended(threads, n -> {
+      ThreadLocalRandom rnd = ThreadLocalRandom.current();
+      long seen = 0;
+      for (int k = 0; k < ops; k++) {
+        int i = rnd.nextInt(accounts);
+        int j = (i + 1 + rnd.nextInt(accounts - 1)) % accounts;
+        if (rnd.nextInt(10) < 8) {
+          seen += refs.get(i).get().flatMap(x -> refs.get(j).get().map(y -> x + y)).unsafeCommit();
+        } else {
+          transfer(refs.get(i), refs.get(j), 1).orElse(STM.succeed(null)).unsafeCommit();
+        }
+      }
+      observed.addAndGet(seen);
+    });
+    int total = 0;
+    for (TRef<Integer> ref : refs) {
+      assertTrue(ref.unsafeGet() >= 0);
+      total += ref.unsafeGet();
+    }
+    assertEquals(accounts * 1000, total);
+    assertTrue(observed.get() > 0);
+  }
+}
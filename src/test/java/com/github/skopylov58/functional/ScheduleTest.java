@@ -0,0 +1,85 @@
+package com.github.skopylov58.functional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ScheduleTest {
+
+    static List<Long> delays(Schedule schedule, TimeSource ts, int max) {
+        Schedule.Driver driver = schedule.driver(ts);
+        List<Long> res = new ArrayList<>();
+        for (Optional<Duration> d = driver.next(); d.isPresent() && res.size() < max; d = driver.next()) {
+            res.add(d.get().toMillis());
+        }
+        return res;
+    }
+
+    @Test
+    public void testCombinators() {
+        TimeSource ts = TimeSource.virtual();
+        Duration ms10 = Duration.ofMillis(10);
+        assertEquals(List.of(0L, 0L, 0L), delays(Schedule.recurs(3), ts, 100));
+        assertEquals(List.of(10L, 20L, 40L, 80L), delays(Schedule.exponential(ms10, 2), ts, 4));
+        assertEquals(List.of(10L, 20L, 40L),
+                delays(Schedule.exponential(ms10, 2).intersect(Schedule.recurs(3)), ts, 100));
+        assertEquals(List.of(0L, 0L, 10L, 10L),
+                delays(Schedule.recurs(2).andThen(Schedule.spaced(ms10).intersect(Schedule.recurs(2))), ts, 100));
+        assertEquals(List.of(10L, 15L, 15L, 15L),
+                delays(Schedule.exponential(ms10, 2).union(Schedule.spaced(Duration.ofMillis(15))), ts, 4));
+        assertEquals(List.of(0L, 0L), delays(Schedule.recurs(2).union(Schedule.recurs(1)), ts, 100));
+
+        delays(Schedule.exponential(Duration.ofMillis(100), 2).jittered(), ts, 10)
+                .forEach(d -> assertTrue(d >= 50));
+    }
+
+    @Test
+    public void testRetryUpTo() {
+        TimeSource.Virtual ts = TimeSource.virtual();
+        AtomicInteger calls = new AtomicInteger();
+        ZIO<Void,String,Integer> failing = new ZIO<>(r -> {
+            calls.incrementAndGet();
+            return Either.left("error");
+        });
+        var res = failing.retry(Schedule.spaced(Duration.ofSeconds(1)).upTo(Duration.ofMinutes(1)), ts).run().apply(null);
+        assertEquals(Either.left("error"), res);
+        assertEquals(61, calls.get());
+        assertEquals(Duration.ofMinutes(1), ts.elapsed());
+    }
+
+    @Test
+    public void testRetrySucceeds() {
+        AtomicInteger calls = new AtomicInteger();
+        ZIO<Void,String,Integer> flaky = new ZIO<>(r -> calls.incrementAndGet() < 3 ? Either.left("error") : Either.right(calls.get()));
+        Duration dur = FPUtils.measure(() ->
+                assertEquals(Either.right(3), flaky.retry(Schedule.spaced(Duration.ofMillis(20))).run().apply(null)));
+        assertTrue(dur.toMillis() >= 40);
+    }
+
+    @Test
+    public void testRepeat() {
+        AtomicInteger calls = new AtomicInteger();
+        ZIO<Void,String,Integer> counter = new ZIO<>(r -> Either.right(calls.incrementAndGet()));
+        assertEquals(Either.right(5), counter.repeat(Schedule.recurs(4)).run().apply(null));
+
+        ZIO<Void,String,Integer> failing = new ZIO<>(r -> calls.incrementAndGet() > 7 ? Either.left("stop") : Either.right(calls.get()));
+        assertEquals(Either.left("stop"), failing.repeat(Schedule.spaced(Duration.ZERO)).run().apply(null));
+    }
+
+    @Test
+    public void testInterruptDelay() throws Exception {
+        ZIO<Void,String,Integer> failing = ZIO.fail("error");
+        var fiber = failing.retry(Schedule.spaced(Duration.ofSeconds(10))).fork().run().apply(null).fold(l -> null, f -> f);
+        Thread.sleep(20);
+        Duration dur = FPUtils.measure(() -> fiber.<Void>interrupt().run().apply(null));
+        assertTrue(dur.toMillis() < 1000);
+        assertTrue(fiber.isDone());
+    }
+}
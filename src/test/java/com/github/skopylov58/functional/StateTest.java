@@ -1,7 +1,15 @@
 package com.github.skopylov58.functional;
 
 import static org.junit.Assert.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 import org.junit.Test;
 
 public class StateTest {
@@ -32,5 +40,115 @@ public class StateTest {
 
     
   }
-  
+
+  static State<Void, Integer> countDown(int n) {
+    return n == 0 ? State.pure(null) : State.<Integer>modify(x -> x + 1).flatMap(__ -> countDown(n - 1));
+  }
+
+  @Test
+  public void testStackSafety() {
+    assertEquals(Integer.valueOf(1_000_000), countDown(1_000_000).exec(0));
+
+    State<Integer, Integer> leftNested = State.pure(0);
+    for (int i = 0; i < 200_000; i++) {
+      leftNested = leftNested.flatMap(x -> s -> new Tuple<>(x + 1, s * 2 % 1000)).map(x -> x + 1);
+    }
+    Tuple<Integer, Integer> res = leftNested.apply(1);
+    assertEquals(Integer.valueOf(400_000), res.first);
+  }
+
+  @Test
+  public void testPrimitives() {
+    State<String, Integer> st = State.<Integer>get()
+        .flatMap(x -> State.put(x * 10))
+        .flatMap(__ -> State.<Integer>modify(x -> x + 1))
+        .flatMap(__ -> State.gets(x -> "state " + x));
+    Tuple<String, Integer> res = st.apply(4);
+    assertEquals("state 41", res.first);
+    assertEquals(Integer.valueOf(41), res.second);
+    assertEquals("state 11", st.eval(1));
+  }
+
+  @Test
+  public void testCellReuse() {
+    // parser state machine: counts words, state is {inWord, count}
+    State.Cell<int[]> cell = new State.Cell<>(new int[2]);
+    String text = "lorem ipsum  dolor sit amet ";
+    for (int i = 0; i < 3; i++) {
+      cell.set(new int[2]);
+      for (char c : text.toCharArray()) {
+        State<Void, int[]> ch = State.modify(a -> {
+          boolean letter = Character.isLetter(c);
+          if (letter && a[0] == 0) {
+            a[1]++;
+          }
+          a[0] = letter ? 1 : 0;
+          return a;
+        });
+        ch.run(cell);
+      }
+      assertEquals(5, cell.get()[1]);
+    }
+  }
+
+  @Test
+  public void testScanState() {
+    // offset of each line in the unbounded log, state is the current offset
+    Stream<String> log = Stream.iterate(0, i -> i + 1).map(i -> "line " + i);
+    List<String> offsets = State.scanState(log, 0L,
+        (String line) -> State.<String, Long>gets(off -> off + ": " + line)
+            .flatMap(res -> State.<Long>modify(off -> off + line.length() + 1).map(__ -> res)))
+        .skip(10)
+        .limit(2)
+        .toList();
+    assertEquals(List.of("70: line 10", "78: line 11"), offsets);
+
+    Iterator<Integer> running = State.scanState(List.of(3, 1, 2).iterator(), 0,
+        (Integer x) -> State.<Integer>modify(s -> s + x).flatMap(__ -> State.<Integer>get()));
+    List<Integer> sums = new ArrayList<>();
+    running.forEachRemaining(sums::add);
+    assertEquals(List.of(3, 4, 6), sums);
+  }
+
+  @Test
+  public void testFoldState() {
+    AtomicBoolean closed = new AtomicBoolean();
+    Stream<String> words = Stream.of("a", "bb", "a", "ccc").onClose(() -> closed.set(true));
+    Map<String, Integer> counts = State.foldState(words, new HashMap<String, Integer>(),
+        w -> State.<Map<String, Integer>>modify(m -> {
+          m.merge(w, 1, Integer::sum);
+          return m;
+        }));
+    assertEquals(Map.of("a", 2, "bb", 1, "ccc", 1), counts);
+    assertTrue(closed.get());
+
+    long total = State.foldState(IntStream.range(0, 1_000_000).boxed(), 0L, i -> State.<Long>modify(s -> s + i));
+    assertEquals(499_999_500_000L, total);
+  }
+
+  @Test
+  public void testCellRunDoesNotAllocate() {
+    // prebuilt chain with constant continuations, states and values are cached small integers
+    State<Void, Integer> toggle = State.modify(s -> s ^ 1);
+    State<Integer, Integer> get = State.get();
+    State<Integer, Integer> chain = toggle
+        .flatMap(__ -> toggle)
+        .flatMap(__ -> toggle)
+        .flatMap(__ -> get)
+        .map(x -> x + 1);
+    State.Cell<Integer> cell = new State.Cell<>(0);
+    int runs = 1_000_000;
+    int sum = 0;
+    for (int i = 0; i < runs; i++) {
+      sum += chain.run(cell); // warm up
+    }
+    long bytes = ZIOTest.allocatedBytes();
+    for (int i = 0; i < runs; i++) {
+      sum += chain.run(cell);
+    }
+    bytes = ZIOTest.allocatedBytes() - bytes;
+    assertEquals(3 * runs, sum);
+    // run loop stack and the cell are reused, no stack, tuple or cell per run
+    assertTrue(bytes + " bytes", bytes < runs);
+  }
 }
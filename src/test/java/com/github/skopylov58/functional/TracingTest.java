@@ -0,0 +1,109 @@
+package com.github.skopylov58.functional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class TracingTest {
+
+  @Before
+  public void before() {
+    Tracing.reset();
+  }
+
+  @After
+  public void after() {
+    Tracing.disable();
+    Tracing.reset();
+  }
+
+  static int slow(int x) {
+    try {
+      Thread.sleep(5);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return x + 1;
+  }
+
+  @Test
+  public void testIOStages() {
+    Tracing.enable();
+    IO<Integer> io = IO.of(() -> 1)
+        .map(TracingTest::slow)
+        .map(x -> new int[x * 1000].length)
+        .flatMap(x -> IO.of(x + 1));
+    for (int i = 0; i < 10; i++) {
+      assertEquals(Integer.valueOf(2001), io.run());
+    }
+    Map<String, Tracing.Stats> stats = Tracing.snapshot();
+    System.out.print(Tracing.report());
+    assertEquals(4, stats.size());
+    stats.keySet().forEach(label -> assertTrue(label, label.contains("TracingTest.testIOStages:")));
+
+    Tracing.Stats slowStage = stats.values().stream().filter(s -> s.totalNanos() > 40_000_000).findFirst().orElseThrow();
+    assertEquals(10, slowStage.count());
+    assertTrue(slowStage.label().startsWith("IO.map"));
+    assertTrue(slowStage.percentileNanos(0.5) >= 4_000_000);
+    assertTrue(stats.values().stream().anyMatch(s -> s.allocatedBytes() >= 10 * 4 * 2000));
+  }
+
+  @Test
+  public void testZIOStages() {
+    Tracing.enable();
+    ZIO<Void, String, Integer> zio = ZIO.<Void, String, Integer>succeed(1)
+        .map(TracingTest::slow)
+        .flatMap(x -> ZIO.succeed(x * 2))
+        .traced("pipeline");
+    assertEquals(Either.right(4), zio.run().apply(null));
+    Map<String, Tracing.Stats> stats = Tracing.snapshot();
+    System.out.print(Tracing.report());
+    assertEquals(3, stats.size());
+    Tracing.Stats pipeline = stats.values().stream().filter(s -> s.label().startsWith("pipeline")).findFirst().orElseThrow();
+    assertTrue(pipeline.totalNanos() >= 5_000_000);
+  }
+
+  @Test
+  public void testDisabled() {
+    IO<Integer> io = IO.of(() -> 1).map(x -> x + 1).flatMap(x -> IO.of(x + 1)).traced("io");
+    ZIO<Void, String, Integer> zio = ZIO.<Void, String, Integer>succeed(1).map(x -> x + 1).traced("zio");
+    // enabling after build does not instrument already built effects
+    Tracing.enable();
+    assertEquals(Integer.valueOf(3), io.run());
+    assertEquals(Either.right(2), zio.run().apply(null));
+    assertTrue(Tracing.snapshot().isEmpty());
+  }
+
+  @Test
+  public void testJfrEvents() throws Exception {
+    Path file = Files.createTempFile("tracing", ".jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable(Tracing.StageEvent.class).withThreshold(java.time.Duration.ZERO);
+      recording.start();
+      Tracing.enable();
+      IO.of(() -> 1).map(TracingTest::slow).run();
+      recording.stop();
+      recording.dump(file);
+      List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+          .filter(e -> e.getEventType().getName().equals("com.github.skopylov58.functional.Stage"))
+          .toList();
+      assertEquals(2, events.size());
+      assertTrue(events.stream().anyMatch(e -> e.getString("label").startsWith("IO.map")
+          && e.getDuration().toMillis() >= 4));
+    } finally {
+      Files.delete(file);
+    }
+  }
+}
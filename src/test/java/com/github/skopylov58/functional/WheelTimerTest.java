@@ -0,0 +1,126 @@
+package com.github.skopylov58.functional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class WheelTimerTest {
+
+  @Test
+  public void testNeverEarly() throws Exception {
+    WheelTimer timer = new WheelTimer(Duration.ofMillis(1), 8);
+    try {
+      long start = System.nanoTime();
+      // longer than one wheel rotation
+      ScheduledFuture<Long> f = timer.schedule(() -> System.nanoTime() - start, 30, TimeUnit.MILLISECONDS);
+      long elapsed = f.get();
+      assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(30));
+      assertTrue(elapsed < TimeUnit.MILLISECONDS.toNanos(500));
+      assertEquals(0, timer.pending());
+    } finally {
+      timer.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testCancelAndShutdown() throws Exception {
+    WheelTimer timer = new WheelTimer(Duration.ofMillis(1), 64);
+    AtomicInteger runs = new AtomicInteger();
+    ScheduledFuture<?> cancelled = timer.schedule(runs::incrementAndGet, 10, TimeUnit.MILLISECONDS);
+    assertTrue(cancelled.cancel(false));
+    timer.schedule(runs::incrementAndGet, 1, TimeUnit.HOURS);
+    ScheduledFuture<?> periodic = timer.scheduleAtFixedRate(runs::incrementAndGet, 0, 2, TimeUnit.MILLISECONDS);
+    Thread.sleep(50);
+    periodic.cancel(false);
+    int count = runs.get();
+    assertTrue(count >= 5);
+    Thread.sleep(20);
+    assertEquals(count, runs.get());
+    List<Runnable> notRun = timer.shutdownNow();
+    assertEquals(1, notRun.size());
+    assertTrue(timer.awaitTermination(1, TimeUnit.SECONDS));
+    assertTrue(timer.isTerminated());
+  }
+
+  @Test
+  public void testPeriodOfWheelSpan() throws Exception {
+    WheelTimer timer = new WheelTimer(Duration.ofMillis(1), 64);
+    try {
+      int runs = 4;
+      long[] fired = new long[runs];
+      CountDownLatch done = new CountDownLatch(runs);
+      AtomicInteger count = new AtomicInteger();
+      long start = System.nanoTime();
+      ScheduledFuture<?> periodic = timer.scheduleAtFixedRate(() -> {
+        int i = count.getAndIncrement();
+        if (i < runs) {
+          fired[i] = System.nanoTime() - start;
+          done.countDown();
+        }
+      }, 64, 64, TimeUnit.MILLISECONDS);
+      assertTrue(done.await(5, TimeUnit.SECONDS));
+      periodic.cancel(false);
+      for (int i = 0; i < runs; i++) {
+        long expected = TimeUnit.MILLISECONDS.toNanos(64 * (i + 1));
+        assertTrue(fired[i] >= expected);
+        // one rotation late would be 64 ms
+        assertTrue("run " + i + " at " + fired[i] / 1_000_000 + " ms",
+            fired[i] < expected + TimeUnit.MILLISECONDS.toNanos(40));
+      }
+    } finally {
+      timer.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testDelayedExecutor() throws Exception {
+    ScheduledExecutorService pool = Executors.newSingleThreadScheduledExecutor();
+    try {
+      CompletableFuture<String> f = CompletableFuture.supplyAsync(() -> Thread.currentThread().getName(),
+          WheelTimer.shared().delayedExecutor(Duration.ofMillis(5), pool));
+      assertFalse(f.get().equals("wheel-timer"));
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testDirectExecutorDoesNotRunOnTimer() throws Exception {
+    CompletableFuture<String> f = CompletableFuture.supplyAsync(() -> Thread.currentThread().getName(),
+        WheelTimer.shared().delayedExecutor(Duration.ofMillis(5), Runnable::run));
+    assertFalse(f.get().equals("wheel-timer"));
+  }
+
+  @Test
+  public void testManyTimeouts() throws Exception {
+    WheelTimer timer = WheelTimer.shared();
+    int n = 200_000;
+    CountDownLatch fired = new CountDownLatch(n / 2);
+    long start = System.nanoTime();
+    ScheduledFuture<?>[] timeouts = new ScheduledFuture<?>[n];
+    for (int i = 0; i < n; i++) {
+      timeouts[i] = timer.schedule(fired::countDown, 20 + i % 100, TimeUnit.MILLISECONDS);
+    }
+    long scheduled = System.nanoTime();
+    for (int i = 0; i < n; i += 2) {
+      timeouts[i].cancel(false);
+    }
+    long cancelled = System.nanoTime();
+    // generous bound, the shared timer may be busy with timeouts of other tests
+    assertTrue(fired.await(60, TimeUnit.SECONDS));
+    System.out.printf("WheelTimer: schedule %d ns/op, cancel %d ns/op%n", (scheduled - start) / n,
+        (cancelled - scheduled) / (n / 2));
+  }
+}
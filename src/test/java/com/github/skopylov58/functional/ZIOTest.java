@@ -1,10 +1,17 @@
 package com.github.skopylov58.functional;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Files;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import org.junit.Test;
@@ -25,5 +32,251 @@ public class ZIOTest {
         
             
     }
-}
 
+    static <R> ZIO<R,String,Integer> sleepAndGet(long millis, int value) {
+        return new ZIO<>(r -> Either.catching(() -> {
+            Thread.sleep(millis);
+            return value;
+        }).fold(e -> Either.left(e.toString()), Either::right));
+    }
+
+    @Test
+    public void testForkJoin() {
+        ZIO<Void,String,Integer> zio = ZIOTest.<Void>sleepAndGet(100, 1)
+                .fork()
+                .flatMap(fiber -> ZIOTest.<Void>sleepAndGet(100, 2).flatMap(b -> fiber.<Void>join().map(a -> a + b)));
+        Duration dur = FPUtils.measure(() -> assertEquals(Either.right(3), zio.run().apply(null)));
+        System.out.println("fork/join: " + dur);
+        assertTrue(dur.toMillis() < 190);
+    }
+
+    @Test
+    public void testZipPar() {
+        ZIO<Void,String,Integer> zio = ZIOTest.<Void>sleepAndGet(100, 1).zipPar(sleepAndGet(100, 2), Integer::sum);
+        Duration dur = FPUtils.measure(() -> assertEquals(Either.right(3), zio.run().apply(null)));
+        System.out.println("zipPar: " + dur);
+        assertTrue(dur.toMillis() < 190);
+
+        ZIO<Void,String,Integer> failed = ZIO.<Void,String,Integer>fail("error").zipPar(sleepAndGet(10_000, 2), Integer::sum);
+        dur = FPUtils.measure(() -> assertEquals(Either.left("error"), failed.run().apply(null)));
+        assertTrue(dur.toMillis() < 1000);
+    }
+
+    @Test
+    public void testRace() {
+        ZIO<Void,String,Integer> zio = ZIOTest.<Void>sleepAndGet(10_000, 1).race(sleepAndGet(10, 2));
+        Duration dur = FPUtils.measure(() -> assertEquals(Either.right(2), zio.run().apply(null)));
+        assertTrue(dur.toMillis() < 1000);
+
+        ZIO<Void,String,Integer> failFast = ZIO.<Void,String,Integer>fail("error").race(sleepAndGet(10, 2));
+        assertEquals(Either.right(2), failFast.run().apply(null));
+
+        ZIO<Void,String,Integer> bothFail = ZIO.<Void,String,Integer>fail("error").race(ZIO.fail("error"));
+        assertEquals(Either.left("error"), bothFail.run().apply(null));
+    }
+
+    @Test
+    public void testCollectAllPar() {
+        List<ZIO<Void,String,Integer>> effects = IntStream.range(0, 10)
+                .mapToObj(i -> ZIOTest.<Void>sleepAndGet(100, i))
+                .toList();
+        Duration dur = FPUtils.measure(() -> {
+            var res = ZIO.collectAllPar(effects).run().apply(null);
+            assertEquals(Either.right(IntStream.range(0, 10).boxed().toList()), res);
+        });
+        System.out.println("collectAllPar: " + dur);
+        assertTrue(dur.toMillis() < 900);
+    }
+
+    @Test
+    public void testForeachPar() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        var zio = ZIO.<Void,String,Integer,Integer>foreachPar(IntStream.range(0, 20).boxed().toList(), i -> new ZIO<>(r -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inFlight.decrementAndGet();
+            return Either.right(i * i);
+        }), 3);
+        var res = zio.run().apply(null);
+        assertEquals(Either.right(IntStream.range(0, 20).map(i -> i * i).boxed().toList()), res);
+        assertTrue(maxInFlight.get() <= 3);
+
+        var failed = ZIO.<Void,String,Integer,Integer>foreachPar(Stream.of(1, 2, 3).toList(),
+                i -> i == 2 ? ZIO.fail("bad " + i) : ZIO.succeed(i), 2);
+        assertEquals(Either.left("bad 2"), failed.run().apply(null));
+    }
+
+    @Test
+    public void testParFailFast() {
+        ZIO<Void,String,Integer> zipFailed = ZIOTest.<Void>sleepAndGet(10_000, 1)
+                .zipPar(ZIOTest.<Void>sleepAndGet(10, 2).flatMap(b -> ZIO.fail("error")), Integer::sum);
+        Duration dur = FPUtils.measure(() -> assertEquals(Either.left("error"), zipFailed.run().apply(null)));
+        assertTrue(dur.toMillis() < 1000);
+
+        var failed = ZIO.<Void,String,Integer,Integer>foreachPar(List.of(1, 2, 3), i -> i == 3
+                ? ZIOTest.<Void>sleepAndGet(10, i).flatMap(x -> ZIO.fail("bad " + x))
+                : sleepAndGet(10_000, i), 3);
+        dur = FPUtils.measure(() -> assertEquals(Either.left("bad 3"), failed.run().apply(null)));
+        assertTrue(dur.toMillis() < 1000);
+    }
+
+    static ZIO<Void,String,Integer> busySteps(int steps, AtomicInteger counter) {
+        ZIO<Void,String,Integer> zio = ZIO.succeed(0);
+        for (int i = 0; i < steps; i++) {
+            zio = zio.flatMap(x -> new ZIO<>(r -> {
+                long end = System.nanoTime() + 1_000_000;
+                while (System.nanoTime() < end) {
+                    // busy CPU work that does not check interruption
+                }
+                counter.incrementAndGet();
+                return Either.right(x + 1);
+            }));
+        }
+        return zio;
+    }
+
+    @Test
+    public void testTimeoutInterruptsAtFlatMapBoundary() throws Exception {
+        AtomicInteger counter = new AtomicInteger();
+        AtomicInteger finalized = new AtomicInteger();
+        var zio = busySteps(2_000, counter)
+                .ensuring(new ZIO<>(r -> Either.right(finalized.incrementAndGet())))
+                .timeout(Duration.ofMillis(50), "timeout");
+        assertEquals(Either.left("timeout"), zio.run().apply(null));
+        Thread.sleep(100);
+        int stopped = counter.get();
+        Thread.sleep(100);
+        assertEquals(stopped, counter.get());
+        assertTrue(stopped < 2_000);
+        assertEquals(1, finalized.get());
+    }
+
+    @Test(timeout = 10_000)
+    public void testTimeoutNotExpired() {
+        for (int i = 0; i < 1_000; i++) {
+            int n = i;
+            var zio = new ZIO<Void,String,Integer>(r -> Either.right(n)).timeout(Duration.ofMinutes(1), "timeout");
+            assertEquals(Either.right(i), zio.run().apply(null));
+        }
+    }
+
+    @Test
+    public void testInterruptBlocking() throws Exception {
+        AtomicInteger interrupted = new AtomicInteger();
+        AtomicInteger finalized = new AtomicInteger();
+        ZIO<Void,String,Integer> sleeping = ZIO.<Void,String,Integer>blocking(r -> {
+            Thread.sleep(10_000);
+            return 1;
+        }, Exception::toString)
+                .onInterrupt(new ZIO<>(r -> Either.right(interrupted.incrementAndGet())))
+                .ensuring(new ZIO<>(r -> Either.right(finalized.incrementAndGet())));
+
+        var fiber = sleeping.fork().run().apply(null).fold(l -> null, f -> f);
+        Thread.sleep(20);
+        Duration dur = FPUtils.measure(() -> fiber.<Void>interrupt().run().apply(null));
+        assertTrue(dur.toMillis() < 1000);
+        assertEquals(1, interrupted.get());
+        assertEquals(1, finalized.get());
+        assertTrue(fiber.isDone());
+    }
+
+    static <R,E,A,B> ZIO<R,E,B> nestedMap(ZIO<R,E,A> zio, Function<? super A,? extends B> mapper) {
+        return new ZIO<>(r -> zio.run().apply(r).map(mapper));
+    }
+
+    static long allocatedBytes() {
+        var bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    static long measurePipeline(String name, ZIO<Void,String,Integer> zio, int runs) {
+        for (int i = 0; i < runs; i++) {
+            zio.run().apply(null); // warm up
+        }
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            zio.run().apply(null);
+        }
+        long nanos = System.nanoTime() - start;
+        bytes = allocatedBytes() - bytes;
+        System.out.println(name + ": " + nanos / runs + " ns/op, " + bytes / runs + " bytes/op");
+        return bytes / runs;
+    }
+
+    @Test
+    public void testMapFusion() {
+        ZIO<Void,String,Integer> fused = ZIO.succeed(0);
+        ZIO<Void,String,Integer> nested = ZIO.succeed(0);
+        for (int i = 0; i < 20; i++) {
+            fused = fused.map(x -> x + 1);
+            nested = nestedMap(nested, x -> x + 1);
+        }
+        assertEquals(Either.right(20), fused.run().apply(null));
+        assertEquals(Either.right(20), nested.run().apply(null));
+        assertEquals(Either.left("error"), ZIO.<Void,String,Integer>fail("error").map(x -> x + 1).map(x -> x * 2).run().apply(null));
+
+        int runs = 200_000;
+        long nestedBytes = measurePipeline("20 nested maps", nested, runs);
+        long fusedBytes = measurePipeline("20 fused maps", fused, runs);
+        assertTrue(fusedBytes < nestedBytes);
+
+        // long chains are built in linear time, shared prefixes are not affected
+        ZIO<Void,String,Integer> prefix = ZIO.succeed(0);
+        for (int i = 0; i < 200_000; i++) {
+            prefix = prefix.map(x -> x + 1);
+        }
+        ZIO<Void,String,Integer> doubled = prefix.map(x -> x * 2);
+        assertEquals(Either.right(400_000), doubled.run().apply(null));
+        assertEquals(Either.right(200_001), prefix.map(x -> x + 1).run().apply(null));
+        assertEquals(Either.right(200_000), prefix.run().apply(null));
+    }
+
+    @Test
+    public void testCached() {
+        TimeSource.Virtual ts = TimeSource.virtual();
+        AtomicInteger runs = new AtomicInteger();
+        ZIO<String, String, String> config = new ZIO<String, String, String>(r -> runs.incrementAndGet() == 1
+                ? Either.left("timeout")
+                : Either.right(r + runs.get()))
+                .cached(Duration.ofSeconds(30), ts);
+        assertEquals(Either.left("timeout"), config.run().apply("v"));
+        assertEquals(Either.right("v2"), config.run().apply("v"));
+        assertEquals(Either.right("v2"), config.run().apply("other"));
+        ts.advance(Duration.ofSeconds(30));
+        assertEquals(Either.right("v3"), config.run().apply("v"));
+
+        ZIO<Void, String, List<String>> par = ZIO.collectAllPar(List.of(config, config, config).stream()
+                .map(z -> z.<Void>provide("p")).toList());
+        assertEquals(Either.right(List.of("v3", "v3", "v3")), par.run().apply(null));
+        assertEquals(3, runs.get());
+    }
+
+    @Test
+    public void testCachedRunnerInterrupted() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        ZIO<Void, String, String> slow = ZIO.<Void, String, String>blocking(r -> {
+            int n = runs.incrementAndGet();
+            started.countDown();
+            if (n == 1) {
+                Thread.sleep(10_000);
+            }
+            return "v" + n;
+        }, Exception::toString).cached(Duration.ofSeconds(30));
+
+        Fiber<String, String> runner = Fiber.start(slow, null, Fiber.defaultExecutor());
+        started.await();
+        Fiber<String, String> joined = Fiber.start(slow, null, Fiber.defaultExecutor());
+        Thread.sleep(50);
+        runner.cancel();
+        // joined caller is not failed by cancellation of the runner but starts the new run
+        assertEquals(Either.right("v2"), joined.await());
+        assertEquals(2, runs.get());
+    }
+}
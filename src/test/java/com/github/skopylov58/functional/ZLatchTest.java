@@ -0,0 +1,32 @@
+package com.github.skopylov58.functional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.concurrent.CancellationException;
+
+import org.junit.Test;
+
+public class ZLatchTest {
+
+  @Test
+  public void testAwait() {
+    ZLatch latch = ZLatch.make(3);
+    Fiber<String, String> waiter = Fiber.start(latch.<Void, String>await().map(__ -> "open"), null,
+        Fiber.defaultExecutor());
+    for (int i = 0; i < 3; i++) {
+      assertFalse(waiter.isDone());
+      latch.<Void, String>countDown().fork().run().apply(null);
+    }
+    assertEquals(Either.right("open"), waiter.await());
+    assertEquals(0, latch.count());
+  }
+
+  @Test(expected = CancellationException.class)
+  public void testInterrupt() {
+    ZLatch latch = ZLatch.make(1);
+    Fiber<String, Void> waiter = Fiber.start(latch.<Void, String>await(), null, Fiber.defaultExecutor());
+    waiter.<Void>interrupt().run().apply(null);
+    waiter.await();
+  }
+}
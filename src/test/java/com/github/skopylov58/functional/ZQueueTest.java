@@ -0,0 +1,183 @@
+package com.github.skopylov58.functional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class ZQueueTest {
+
+  @Test
+  public void testBounded() {
+    ZQueue<Integer> q = ZQueue.bounded(3);
+    assertEquals(4, q.capacity());
+    for (int i = 0; i < 4; i++) {
+      assertTrue(q.tryOffer(i));
+    }
+    assertFalse(q.tryOffer(4));
+    assertEquals(4, q.size());
+    for (int i = 0; i < 4; i++) {
+      assertEquals(Integer.valueOf(i), q.tryPoll());
+    }
+    assertNull(q.tryPoll());
+    assertEquals(0, q.size());
+  }
+
+  @Test
+  public void testSmallCapacity() {
+    assertEquals(2, ZQueue.bounded(1).capacity());
+    assertEquals(2, ZQueue.bounded(2).capacity());
+    assertEquals(4, ZQueue.bounded(4).capacity());
+    assertEquals(8, ZQueue.bounded(5).capacity());
+  }
+
+  @Test
+  public void testTakeSuspends() {
+    ZQueue<String> q = ZQueue.bounded(1);
+    Fiber<String, String> taker = Fiber.start(q.<Void, String>take().map(s -> s + "!"), null, Fiber.defaultExecutor());
+    Fiber<String, Void> putter = Fiber.start(q.<Void, String>offer("a")
+        .flatMap(__ -> q.offer("b"))
+        .flatMap(__ -> q.offer("c")), null, Fiber.defaultExecutor());
+    assertEquals(Either.right("a!"), taker.await());
+    assertEquals(Either.right("b"), q.<Void, String>take().run().apply(null));
+    assertEquals(Either.right("c"), q.<Void, String>take().run().apply(null));
+    assertTrue(putter.await().isRight());
+  }
+
+  @Test
+  public void testInterruptTake() {
+    ZQueue<String> q = ZQueue.bounded(1);
+    Fiber<String, String> taker = Fiber.start(q.<Void, String>take(), null, Fiber.defaultExecutor());
+    assertEquals(Either.right(null), taker.<Void>interrupt().run().apply(null));
+    try {
+      taker.await();
+      throw new AssertionError("expected cancellation");
+    } catch (CancellationException e) {
+      // expected
+    }
+    assertTrue(q.tryOffer("a"));
+    assertEquals("a", q.tryPoll());
+  }
+
+  @Test(timeout = 30_000)
+  public void testNoLostWakeUps() throws Exception {
+    // small queue, so that both sides wait often
+    ZQueue<Integer> q = ZQueue.bounded(4);
+    int threads = 3;
+    int items = 100_000;
+    AtomicLong sum = new AtomicLong();
+    List<Thread> all = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      all.add(new Thread(() -> {
+        for (int k = 0; k < items; k++) {
+          q.unsafeOffer(k);
+        }
+      }));
+      all.add(new Thread(() -> {
+        long s = 0;
+        for (int k = 0; k < items; k++) {
+          s += q.unsafeTake();
+        }
+        sum.addAndGet(s);
+      }));
+    }
+    all.forEach(Thread::start);
+    for (Thread t : all) {
+      t.join();
+    }
+    assertEquals((long) threads * items * (items - 1) / 2, sum.get());
+    assertEquals(0, q.size());
+  }
+
+  @Test(timeout = 60_000)
+  public void testWakeUpIsNotLostByRecheck() throws Exception {
+    ZQueue<Integer> q = ZQueue.bounded(4);
+    AtomicLong taken = new AtomicLong();
+    List<Thread> takers = new ArrayList<>();
+    for (int t = 0; t < 2; t++) {
+      Thread taker = new Thread(() -> {
+        try {
+          for (;;) {
+            q.unsafeTake();
+            taken.incrementAndGet();
+          }
+        } catch (CancellationException e) {
+          // stopped
+        }
+      });
+      taker.start();
+      takers.add(taker);
+    }
+    try {
+      for (int round = 1; round <= 100_000; round++) {
+        q.unsafeOffer(round);
+        q.unsafeOffer(round);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (taken.get() < 2L * round) {
+          assertTrue("stalled at round " + round + " with size " + q.size(), System.nanoTime() < deadline);
+          Thread.yield();
+        }
+      }
+    } finally {
+      takers.forEach(Thread::interrupt);
+    }
+  }
+
+  @Test
+  public void testContention() throws Exception {
+    int pairs = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+    int items = 200_000;
+    for (int round = 0; round < 3; round++) {
+      ZQueue<Integer> zq = ZQueue.bounded(1024);
+      AtomicLong zsum = new AtomicLong();
+      long zNanos = RefTest.contended(pairs * 2, i -> {
+        if (i % 2 == 0) {
+          for (int k = 0; k < items; k++) {
+            zq.unsafeOffer(k);
+          }
+        } else {
+          long s = 0;
+          for (int k = 0; k < items; k++) {
+            s += zq.unsafeTake();
+          }
+          zsum.addAndGet(s);
+        }
+      });
+
+      BlockingQueue<Integer> bq = new ArrayBlockingQueue<>(1024);
+      AtomicLong bsum = new AtomicLong();
+      long bNanos = RefTest.contended(pairs * 2, i -> {
+        try {
+          if (i % 2 == 0) {
+            for (int k = 0; k < items; k++) {
+              bq.put(k);
+            }
+          } else {
+            long s = 0;
+            for (int k = 0; k < items; k++) {
+              s += bq.take();
+            }
+            bsum.addAndGet(s);
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      long expected = (long) pairs * items * (items - 1) / 2;
+      assertEquals(expected, zsum.get());
+      assertEquals(expected, bsum.get());
+      System.out.printf("ZQueue %dP/%dC: %d ns/item, ArrayBlockingQueue: %d ns/item%n", pairs, pairs,
+          zNanos / ((long) pairs * items), bNanos / ((long) pairs * items));
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package com.github.skopylov58.functional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ZSemaphoreTest {
+
+  @Test
+  public void testLimitsConcurrency() {
+    ZSemaphore sem = ZSemaphore.make(3);
+    AtomicInteger inUse = new AtomicInteger();
+    AtomicInteger maxInUse = new AtomicInteger();
+    List<Integer> input = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      input.add(i);
+    }
+    ZIO<Void, String, List<Integer>> zio = ZIO.<Void, String, Integer, Integer>foreachPar(input, i -> sem.withPermit(
+        ZIO.<Void, String, Integer>blocking(r -> {
+          maxInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+          Thread.sleep(2);
+          inUse.decrementAndGet();
+          return i * 2;
+        }, Exception::toString)), 50);
+    Either<String, List<Integer>> res = zio.run().apply(null);
+    assertEquals(Integer.valueOf(98), res.fold(l -> -1, list -> list.get(49)));
+    assertTrue(maxInUse.get() <= 3);
+    assertEquals(3, sem.available());
+  }
+
+  @Test
+  public void testPermitsReturnedOnFailureAndInterrupt() {
+    ZSemaphore sem = ZSemaphore.make(2);
+    assertEquals(Either.left("err"), sem.withPermits(2, ZIO.<Void, String, Integer>fail("err")).run().apply(null));
+    assertEquals(2, sem.available());
+
+    sem.<Void, String>acquire(2).run().apply(null);
+    Fiber<String, Integer> waiter = Fiber.start(sem.withPermit(ZIO.<Void, String, Integer>succeed(1)), null,
+        Fiber.defaultExecutor());
+    waiter.<Void>interrupt().run().apply(null);
+    try {
+      waiter.await();
+      throw new AssertionError("expected cancellation");
+    } catch (CancellationException e) {
+      // expected
+    }
+    sem.<Void, String>release(2).run().apply(null);
+    assertEquals(2, sem.available());
+  }
+}
@@ -0,0 +1,119 @@
+package com.github.skopylov58.functional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class ZStreamTest {
+
+    @Test
+    public void testFold() {
+        ZStream<Void, String, Integer> range = ZStream.range(0, 1_000_000);
+        var sum = range.map(i -> (long) i).fold(0L, Long::sum);
+        assertEquals(Either.right(499_999_500_000L), sum.run().apply(null));
+        assertEquals(Either.right(500_000L), range.filter(i -> i % 2 == 0).runCount().run().apply(null));
+        assertEquals(Either.right("0,1,2"),
+                range.take(3).map(String::valueOf).runCollect(Collectors.joining(",")).run().apply(null));
+        assertEquals(Either.right(List.of(1, 2, 3)),
+                ZStream.<Void, String, Integer>of(1, 2).concat(ZStream.of(3)).runCollect().run().apply(null));
+    }
+
+    @Test
+    public void testLines() throws Exception {
+        Path file = Files.createTempFile("zstream", ".log");
+        try {
+            Files.write(file, IntStream.range(0, 10_000).mapToObj(i -> i % 10 == 0 ? "ERROR " + i : "INFO " + i).toList());
+            ZStream<Void, Exception, String> lines = ZStream.lines(file, Function.identity());
+            assertEquals(Either.right(1_000L), lines.filter(s -> s.startsWith("ERROR")).runCount().run().apply(null));
+            assertEquals(Either.right("ERROR 0"), lines.runHead().run().apply(null));
+        } finally {
+            Files.delete(file);
+        }
+        var missing = ZStream.lines(file, Function.identity()).runCount().run().apply(null);
+        assertTrue(missing.isLeft());
+    }
+
+    static ZStream<Void, String, Integer> tracked(AtomicBoolean closed, Stream<Integer> stream) {
+        return ZStream.fromJavaStream(r -> stream.onClose(() -> closed.set(true)),
+                e -> e.getCause() == null ? e.getMessage() : e.getCause().getMessage());
+    }
+
+    @Test
+    public void testResourcesReleased() throws Exception {
+        AtomicBoolean closed = new AtomicBoolean();
+        var head = tracked(closed, Stream.iterate(0, i -> i + 1)).take(3).runCollect();
+        assertEquals(Either.right(List.of(0, 1, 2)), head.run().apply(null));
+        assertTrue(closed.get());
+
+        closed.set(false);
+        Stream<Integer> failing = IntStream.range(0, 10_000).boxed().map(i -> {
+            if (i == 5_000) {
+                throw new UncheckedIOException(new IOException("broken"));
+            }
+            return i;
+        });
+        assertEquals(Either.left("broken"), tracked(closed, failing).runCount().run().apply(null));
+        assertTrue(closed.get());
+
+        closed.set(false);
+        var effectFailure = tracked(closed, Stream.of(1, 2, 3))
+                .mapZIO(i -> i == 2 ? ZIO.<Void, String, Integer>fail("failed " + i) : ZIO.succeed(i))
+                .runCollect();
+        assertEquals(Either.left("failed 2"), effectFailure.run().apply(null));
+        assertTrue(closed.get());
+
+        closed.set(false);
+        var infinite = tracked(closed, Stream.iterate(0, i -> i + 1)).foreach(i -> {});
+        var fiber = infinite.fork().run().apply(null).fold(l -> null, f -> f);
+        Thread.sleep(50);
+        fiber.<Void>interrupt().run().apply(null);
+        assertTrue(closed.get());
+    }
+
+    @Test
+    public void testMapZIOPar() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        ZStream<Void, String, Integer> stream = ZStream.<Void, String>range(0, 40)
+                .mapZIO(i -> ZIO.blocking(r -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Thread.sleep(20);
+                    running.decrementAndGet();
+                    return i * 2;
+                }, Exception::toString), 8);
+        Duration dur = FPUtils.measure(() -> assertEquals(
+                Either.right(IntStream.range(0, 40).map(i -> i * 2).boxed().toList()),
+                stream.runCollect().run().apply(null)));
+        System.out.println("mapZIO par: " + dur);
+        assertTrue(maxRunning.get() <= 8);
+        assertTrue(dur.toMillis() < 40 * 20);
+    }
+
+    @Test
+    public void testGrouping() {
+        ZStream<Void, String, Integer> stream = ZStream.range(0, 1_030);
+        List<List<Integer>> groups = stream.grouped(100).runCollect().run().apply(null).optional().orElseThrow();
+        assertEquals(11, groups.size());
+        assertEquals(30, groups.get(10).size());
+        assertEquals(Integer.valueOf(1_029), groups.get(10).get(29));
+
+        var windows = ZStream.<Void, String, Integer>of(1, 2, 3, 4).sliding(3).runCollect().run().apply(null);
+        assertEquals(Either.right(List.of(List.of(1, 2, 3), List.of(2, 3, 4))), windows);
+        var shortWindow = ZStream.<Void, String, Integer>of(1, 2).sliding(3).runCollect().run().apply(null);
+        assertEquals(Either.right(List.of(List.of(1, 2))), shortWindow);
+    }
+}